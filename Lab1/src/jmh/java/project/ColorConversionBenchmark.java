@@ -0,0 +1,217 @@
+package project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions per second of the scalar, bulk (float and fixed point) and lookup-table paths.
+ * One operation is one color; single-threaded, to measure the conversions and not the scaling.
+ * <p>
+ * "random" - every pixel a random color, the worst case for the LUT cache;
+ * "photo" - runs of colors from a 20000-color palette, as in real images.
+ * The LUTs are built in setup and keep their caches between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorConversionBenchmark {
+
+    private static final int PIXELS = 1 << 20;
+
+    @Param({"random", "photo"})
+    public String data;
+
+    private int[] rgb;
+    private int[] back;
+    // Planes of each model: the RGB -> model benchmarks write them, model -> RGB ones read them
+    private final float[][] cmyk = new float[4][PIXELS];
+    private final short[][] cmykFixed = new short[4][PIXELS];
+    private final float[][] hsv = new float[3][PIXELS];
+    private final short[][] hsvFixed = new short[3][PIXELS];
+    private final float[] one = new float[4];
+    private ColorLut cmykLut;
+    private ColorLut hsvLut;
+
+    @Setup
+    public void setUp() {
+        rgb = pixels(data);
+        back = new int[PIXELS];
+        cmykLut = new ColorLut(ImageSeparation.Model.CMYK, 65, ColorLut.Interpolation.TETRAHEDRAL);
+        hsvLut = new ColorLut(ImageSeparation.Model.HSV, 65, ColorLut.Interpolation.TETRAHEDRAL);
+        cmykLut.convert(0, one);
+        hsvLut.convert(0, one);
+        ColorConversions.rgbToCmyk(rgb, cmyk[0], cmyk[1], cmyk[2], cmyk[3]);
+        ColorConversions.rgbToCmyk(rgb, cmykFixed[0], cmykFixed[1], cmykFixed[2], cmykFixed[3]);
+        ColorConversions.rgbToHsv(rgb, hsv[0], hsv[1], hsv[2]);
+        ColorConversions.rgbToHsv(rgb, hsvFixed[0], hsvFixed[1], hsvFixed[2]);
+    }
+
+    // ---------------------------------------------------------------- RGB -> CMYK
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public float[][] cmykScalar() {
+        for (int i = 0; i < PIXELS; i++) {
+            ColorConversions.rgbToCmyk(rgb[i], one);
+            cmyk[0][i] = one[0];
+            cmyk[1][i] = one[1];
+            cmyk[2][i] = one[2];
+            cmyk[3][i] = one[3];
+        }
+        return cmyk;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public float[][] cmykBulkFloat() {
+        ColorConversions.rgbToCmyk(rgb, cmyk[0], cmyk[1], cmyk[2], cmyk[3]);
+        return cmyk;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public short[][] cmykBulkFixed() {
+        ColorConversions.rgbToCmyk(rgb, cmykFixed[0], cmykFixed[1], cmykFixed[2], cmykFixed[3]);
+        return cmykFixed;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public float[][] cmykLut() {
+        cmykLut.convert(rgb, 0, PIXELS, cmyk);
+        return cmyk;
+    }
+
+    // ---------------------------------------------------------------- CMYK -> RGB
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] cmykToRgbScalar() {
+        for (int i = 0; i < PIXELS; i++) {
+            back[i] = ColorConversions.cmykToRgb(cmyk[0][i], cmyk[1][i], cmyk[2][i], cmyk[3][i]);
+        }
+        return back;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] cmykToRgbBulkFloat() {
+        ColorConversions.cmykToRgb(cmyk[0], cmyk[1], cmyk[2], cmyk[3], back);
+        return back;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] cmykToRgbBulkFixed() {
+        ColorConversions.cmykToRgb(cmykFixed[0], cmykFixed[1], cmykFixed[2], cmykFixed[3], back);
+        return back;
+    }
+
+    // ---------------------------------------------------------------- RGB -> HSV
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public float[][] hsvAwt() {
+        for (int i = 0; i < PIXELS; i++) {
+            int p = rgb[i];
+            Color.RGBtoHSB((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, one);
+            hsv[0][i] = one[0];
+            hsv[1][i] = one[1];
+            hsv[2][i] = one[2];
+        }
+        return hsv;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public float[][] hsvBulkFloat() {
+        ColorConversions.rgbToHsv(rgb, hsv[0], hsv[1], hsv[2]);
+        return hsv;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public short[][] hsvBulkFixed() {
+        ColorConversions.rgbToHsv(rgb, hsvFixed[0], hsvFixed[1], hsvFixed[2]);
+        return hsvFixed;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public float[][] hsvLut() {
+        hsvLut.convert(rgb, 0, PIXELS, hsv);
+        return hsv;
+    }
+
+    // ---------------------------------------------------------------- HSV -> RGB
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] hsvToRgbAwt() {
+        for (int i = 0; i < PIXELS; i++) {
+            back[i] = Color.HSBtoRGB(hsv[0][i], hsv[1][i], hsv[2][i]);
+        }
+        return back;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] hsvToRgbBulkFloat() {
+        ColorConversions.hsvToRgb(hsv[0], hsv[1], hsv[2], back);
+        return back;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] hsvToRgbBulkFixed() {
+        ColorConversions.hsvToRgb(hsvFixed[0], hsvFixed[1], hsvFixed[2], back);
+        return back;
+    }
+
+    /**
+     * Test pixels; fixed seed, so every run converts the same colors.
+     */
+    static int[] pixels(String data) {
+        Random random = new Random(42);
+        int[] pixels = new int[PIXELS];
+        switch (data) {
+            case "random" -> {
+                for (int i = 0; i < PIXELS; i++) {
+                    pixels[i] = 0xFF000000 | random.nextInt(1 << 24);
+                }
+            }
+            case "photo" -> {
+                int[] palette = new int[20000];
+                for (int i = 0; i < palette.length; i++) {
+                    palette[i] = 0xFF000000 | random.nextInt(1 << 24);
+                }
+                int color = palette[0];
+                for (int i = 0; i < PIXELS; i++) {
+                    if (random.nextInt(8) == 0) {
+                        color = palette[random.nextInt(palette.length)];
+                    }
+                    pixels[i] = color;
+                }
+            }
+            default -> throw new IllegalArgumentException(data);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,160 @@
+package project;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Exhaustive round-trip check: every one of the 2^24 RGB colors goes to CMYK / HSV and back,
+ * and the largest per-channel error of each path is compared with its limit.
+ * <p>
+ * Exact paths (float and fixed point, both models) must come back unchanged. Approximate paths
+ * have limits at their measured worst case, so an optimisation that loses accuracy fails the
+ * check instead of quietly shipping:
+ * <ul>
+ *   <li>lookup tables - interpolated components, converted back exactly;</li>
+ *   <li>what the sliders show - CMYK and S, V in whole percent, H in whole degrees, with H and S
+ *   of dark and grey colors replaced as {@link ColorConverterApp#displayHsv} does. The
+ *   preserved H and S come from the previous color in scan order, so only colors with V or S
+ *   at most LOW_VALUE_THRESHOLD, whose H and S barely matter, can be shown with foreign
+ *   ones.</li>
+ * </ul>
+ * Exits with status 1 if any path exceeds its limit. Run by {@code mvn -P jmh verify}
+ * before the benchmarks, or directly: {@code java -cp ... project.RoundTripAccuracy}.
+ */
+public final class RoundTripAccuracy {
+
+    private static final int SLICE = 1 << 16;
+
+    private static final ColorLut CMYK_LUT =
+            new ColorLut(ImageSeparation.Model.CMYK, 65, ColorLut.Interpolation.TETRAHEDRAL);
+    private static final ColorLut HSV_LUT =
+            new ColorLut(ImageSeparation.Model.HSV, 65, ColorLut.Interpolation.TETRAHEDRAL);
+
+    /**
+     * Converts rgb to the model and back into back, using buffers of the slice.
+     */
+    private interface RoundTrip {
+        void run(int[] rgb, int[] back, Slice slice);
+    }
+
+    private record Check(String name, int limit, RoundTrip trip) {
+    }
+
+    private static final List<Check> CHECKS = List.of(
+            new Check("CMYK float", 0, (rgb, back, s) -> {
+                ColorConversions.rgbToCmyk(rgb, s.f[0], s.f[1], s.f[2], s.f[3]);
+                ColorConversions.cmykToRgb(s.f[0], s.f[1], s.f[2], s.f[3], back);
+            }),
+            new Check("CMYK fixed", 0, (rgb, back, s) -> {
+                ColorConversions.rgbToCmyk(rgb, s.q[0], s.q[1], s.q[2], s.q[3]);
+                ColorConversions.cmykToRgb(s.q[0], s.q[1], s.q[2], s.q[3], back);
+            }),
+            new Check("HSV float", 0, (rgb, back, s) -> {
+                ColorConversions.rgbToHsv(rgb, s.f[0], s.f[1], s.f[2]);
+                ColorConversions.hsvToRgb(s.f[0], s.f[1], s.f[2], back);
+            }),
+            new Check("HSV fixed", 0, (rgb, back, s) -> {
+                ColorConversions.rgbToHsv(rgb, s.q[0], s.q[1], s.q[2]);
+                ColorConversions.hsvToRgb(s.q[0], s.q[1], s.q[2], back);
+            }),
+            new Check("CMYK LUT 65^3 tetrahedral", 0, (rgb, back, s) -> {
+                CMYK_LUT.convert(rgb, 0, rgb.length, s.f);
+                ColorConversions.cmykToRgb(s.f[0], s.f[1], s.f[2], s.f[3], back);
+            }),
+            new Check("HSV LUT 65^3 tetrahedral", 0, (rgb, back, s) -> {
+                HSV_LUT.convert(rgb, 0, rgb.length, s.f3);
+                ColorConversions.hsvToRgb(s.f[0], s.f[1], s.f[2], back);
+            }),
+            new Check("CMYK sliders (1%)", 2, (rgb, back, s) -> {
+                float[] cmyk = s.one;
+                for (int i = 0; i < rgb.length; i++) {
+                    ColorConversions.rgbToCmyk(rgb[i], cmyk);
+                    back[i] = ColorConversions.cmykToRgb(percent(cmyk[0]), percent(cmyk[1]),
+                            percent(cmyk[2]), percent(cmyk[3]));
+                }
+            }),
+            new Check("HSV sliders (1 deg, 1%, preserved H/S)", 6, (rgb, back, s) -> {
+                float[] hsv = s.one;
+                for (int i = 0; i < rgb.length; i++) {
+                    ColorConversions.rgbToHsv(rgb[i], hsv);
+                    ColorConverterApp.displayHsv(hsv, s.preservedHS);
+                    back[i] = ColorConversions.hsvToRgb(Math.round(hsv[0] * 360) / 360f, percent(hsv[1]),
+                            percent(hsv[2]));
+                }
+            })
+    );
+
+    // Buffers of one slice of SLICE colors
+    private static final class Slice {
+        final float[][] f = new float[4][SLICE];
+        final float[][] f3 = {f[0], f[1], f[2]};
+        final short[][] q = new short[4][SLICE];
+        final float[] one = new float[4];
+        final float[] preservedHS = {0f, 1f};
+    }
+
+    private RoundTripAccuracy() {
+    }
+
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        int checks = CHECKS.size();
+        // Per check: worst error and its color packed as error << 32 | rgb, and the error sum
+        long[] worst = new long[checks];
+        long[] total = new long[checks];
+        IntStream.range(0, (1 << 24) / SLICE).parallel().forEach(sliceIndex -> {
+            Slice slice = new Slice();
+            int[] rgb = new int[SLICE];
+            int[] back = new int[SLICE];
+            for (int i = 0; i < SLICE; i++) {
+                rgb[i] = 0xFF000000 | (sliceIndex * SLICE + i);
+            }
+            long[] sliceWorst = new long[checks];
+            long[] sliceTotal = new long[checks];
+            for (int c = 0; c < checks; c++) {
+                CHECKS.get(c).trip().run(rgb, back, slice);
+                for (int i = 0; i < SLICE; i++) {
+                    int error = channelError(rgb[i], back[i]);
+                    sliceTotal[c] += error;
+                    sliceWorst[c] = Math.max(sliceWorst[c], (long) error << 32 | (rgb[i] & 0xFFFFFF));
+                }
+            }
+            synchronized (worst) {
+                for (int c = 0; c < checks; c++) {
+                    worst[c] = Math.max(worst[c], sliceWorst[c]);
+                    total[c] += sliceTotal[c];
+                }
+            }
+        });
+
+        boolean failed = false;
+        System.out.printf(Locale.ROOT, "%-40s %9s %6s %10s %8s%n", "round trip", "max error", "limit", "mean", "worst");
+        for (int c = 0; c < checks; c++) {
+            Check check = CHECKS.get(c);
+            int error = (int) (worst[c] >>> 32);
+            boolean ok = error <= check.limit();
+            failed |= !ok;
+            System.out.printf(Locale.ROOT, "%-40s %9d %6d %10.5f  #%06X%s%n", check.name(), error, check.limit(),
+                    (double) total[c] / (1 << 24), (int) worst[c] & 0xFFFFFF, ok ? "" : "  FAILED");
+        }
+        System.out.printf(Locale.ROOT, "%d colors x %d paths in %d ms%n", 1 << 24, checks,
+                (System.nanoTime() - start) / 1_000_000);
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static float percent(float component) {
+        return Math.round(component * 100) / 100f;
+    }
+
+    // Largest difference over R, G and B
+    private static int channelError(int a, int b) {
+        int error = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            error = Math.max(error, Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)));
+        }
+        return error;
+    }
+}
@@ -0,0 +1,319 @@
+package project;
+
+/**
+ * Headless, allocation-free color-space conversions between packed RGB ints
+ * (0xAARRGGBB, alpha ignored) and CMYK / HSV planes.
+ * <p>
+ * Bulk methods convert the index range [from, to): element i of the RGB array maps
+ * to element i of every plane, so callers can split one large array between threads.
+ * All output buffers are provided by the caller.
+ * <p>
+ * Planes come in two flavours:
+ * <ul>
+ *   <li>{@code float[]} with components in [0, 1] (hue as a fraction of a full turn).
+ *   The float math matches {@link java.awt.Color#RGBtoHSB} and {@link java.awt.Color#HSBtoRGB}
+ *   exactly, so results are identical to the Swing converter.</li>
+ *   <li>{@code short[]} fixed point, where {@link #FIXED_ONE} represents 1.0. This is half the
+ *   memory and pure integer math.</li>
+ * </ul>
+ */
+public final class ColorConversions {
+
+    /** Fixed-point representation of 1.0 in {@code short[]} planes. */
+    public static final int FIXED_ONE = Short.MAX_VALUE;
+
+    private static final long FIXED_ONE_SQ = (long) FIXED_ONE * FIXED_ONE;
+
+    private ColorConversions() {
+    }
+
+    // ---------------------------------------------------------------- single colors
+
+    /**
+     * Converts one color to CMYK, writing c, m, y, k into {@code out[0..3]}.
+     */
+    public static void rgbToCmyk(int rgb, float[] out) {
+        float r = ((rgb >> 16) & 0xFF) / 255f;
+        float g = ((rgb >> 8) & 0xFF) / 255f;
+        float b = (rgb & 0xFF) / 255f;
+        float k = 1 - Math.max(r, Math.max(g, b));
+        if (1 - k < 1e-9) { // Pure black
+            out[0] = 0;
+            out[1] = 0;
+            out[2] = 0;
+            out[3] = 1;
+            return;
+        }
+        out[0] = (1 - r - k) / (1 - k);
+        out[1] = (1 - g - k) / (1 - k);
+        out[2] = (1 - b - k) / (1 - k);
+        out[3] = k;
+    }
+
+    /**
+     * Converts one CMYK color (components in [0, 1]) to packed opaque RGB.
+     */
+    public static int cmykToRgb(float c, float m, float y, float k) {
+        int r = clamp(Math.round(255.0f * (1 - c) * (1 - k)));
+        int g = clamp(Math.round(255.0f * (1 - m) * (1 - k)));
+        int b = clamp(Math.round(255.0f * (1 - y) * (1 - k)));
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Converts one color to HSV, writing h, s, v into {@code out[0..2]}; same values as
+     * {@link java.awt.Color#RGBtoHSB}.
+     */
+    public static void rgbToHsv(int rgb, float[] out) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        out[0] = hue(r, g, b, max, min);
+        out[1] = max != 0 ? ((float) (max - min)) / ((float) max) : 0;
+        out[2] = ((float) max) / 255.0f;
+    }
+
+    /**
+     * Converts one HSV color to packed opaque RGB; same value as {@link java.awt.Color#HSBtoRGB}.
+     */
+    public static int hsvToRgb(float hue, float saturation, float value) {
+        int r = 0, g = 0, b = 0;
+        if (saturation == 0) {
+            r = g = b = (int) (value * 255.0f + 0.5f);
+        } else {
+            float h = (hue - (float) Math.floor(hue)) * 6.0f;
+            float f = h - (float) Math.floor(h);
+            float p = value * (1.0f - saturation);
+            float q = value * (1.0f - saturation * f);
+            float t = value * (1.0f - (saturation * (1.0f - f)));
+            switch ((int) h) {
+                case 0 -> { r = to255(value); g = to255(t); b = to255(p); }
+                case 1 -> { r = to255(q); g = to255(value); b = to255(p); }
+                case 2 -> { r = to255(p); g = to255(value); b = to255(t); }
+                case 3 -> { r = to255(p); g = to255(q); b = to255(value); }
+                case 4 -> { r = to255(t); g = to255(p); b = to255(value); }
+                case 5 -> { r = to255(value); g = to255(p); b = to255(q); }
+                default -> { }
+            }
+        }
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    // ---------------------------------------------------------------- float planes
+
+    public static void rgbToCmyk(int[] rgb, float[] c, float[] m, float[] y, float[] k) {
+        rgbToCmyk(rgb, 0, rgb.length, c, m, y, k);
+    }
+
+    public static void rgbToCmyk(int[] rgb, int from, int to, float[] c, float[] m, float[] y, float[] k) {
+        for (int i = from; i < to; i++) {
+            int p = rgb[i];
+            float r = ((p >> 16) & 0xFF) / 255f;
+            float g = ((p >> 8) & 0xFF) / 255f;
+            float b = (p & 0xFF) / 255f;
+            float black = 1 - Math.max(r, Math.max(g, b));
+            if (1 - black < 1e-9) {
+                c[i] = 0;
+                m[i] = 0;
+                y[i] = 0;
+                k[i] = 1;
+            } else {
+                c[i] = (1 - r - black) / (1 - black);
+                m[i] = (1 - g - black) / (1 - black);
+                y[i] = (1 - b - black) / (1 - black);
+                k[i] = black;
+            }
+        }
+    }
+
+    public static void cmykToRgb(float[] c, float[] m, float[] y, float[] k, int[] rgb) {
+        cmykToRgb(c, m, y, k, rgb, 0, rgb.length);
+    }
+
+    public static void cmykToRgb(float[] c, float[] m, float[] y, float[] k, int[] rgb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            rgb[i] = cmykToRgb(c[i], m[i], y[i], k[i]);
+        }
+    }
+
+    public static void rgbToHsv(int[] rgb, float[] h, float[] s, float[] v) {
+        rgbToHsv(rgb, 0, rgb.length, h, s, v);
+    }
+
+    public static void rgbToHsv(int[] rgb, int from, int to, float[] h, float[] s, float[] v) {
+        for (int i = from; i < to; i++) {
+            int p = rgb[i];
+            int r = (p >> 16) & 0xFF;
+            int g = (p >> 8) & 0xFF;
+            int b = p & 0xFF;
+            int max = Math.max(r, Math.max(g, b));
+            int min = Math.min(r, Math.min(g, b));
+            h[i] = hue(r, g, b, max, min);
+            s[i] = max != 0 ? ((float) (max - min)) / ((float) max) : 0;
+            v[i] = ((float) max) / 255.0f;
+        }
+    }
+
+    public static void hsvToRgb(float[] h, float[] s, float[] v, int[] rgb) {
+        hsvToRgb(h, s, v, rgb, 0, rgb.length);
+    }
+
+    public static void hsvToRgb(float[] h, float[] s, float[] v, int[] rgb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            rgb[i] = hsvToRgb(h[i], s[i], v[i]);
+        }
+    }
+
+    // ---------------------------------------------------------------- fixed-point planes
+
+    public static void rgbToCmyk(int[] rgb, short[] c, short[] m, short[] y, short[] k) {
+        rgbToCmyk(rgb, 0, rgb.length, c, m, y, k);
+    }
+
+    public static void rgbToCmyk(int[] rgb, int from, int to, short[] c, short[] m, short[] y, short[] k) {
+        for (int i = from; i < to; i++) {
+            int p = rgb[i];
+            int r = (p >> 16) & 0xFF;
+            int g = (p >> 8) & 0xFF;
+            int b = p & 0xFF;
+            int max = Math.max(r, Math.max(g, b));
+            if (max == 0) {
+                c[i] = 0;
+                m[i] = 0;
+                y[i] = 0;
+                k[i] = FIXED_ONE;
+                continue;
+            }
+            // (1 - r' - k) / (1 - k) = (max - r) / max
+            int half = max >> 1;
+            c[i] = (short) (((max - r) * FIXED_ONE + half) / max);
+            m[i] = (short) (((max - g) * FIXED_ONE + half) / max);
+            y[i] = (short) (((max - b) * FIXED_ONE + half) / max);
+            k[i] = (short) (((255 - max) * FIXED_ONE + 127) / 255);
+        }
+    }
+
+    public static void cmykToRgb(short[] c, short[] m, short[] y, short[] k, int[] rgb) {
+        cmykToRgb(c, m, y, k, rgb, 0, rgb.length);
+    }
+
+    public static void cmykToRgb(short[] c, short[] m, short[] y, short[] k, int[] rgb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            long white = FIXED_ONE - k[i];
+            int r = clamp((int) ((255 * (FIXED_ONE - c[i]) * white + FIXED_ONE_SQ / 2) / FIXED_ONE_SQ));
+            int g = clamp((int) ((255 * (FIXED_ONE - m[i]) * white + FIXED_ONE_SQ / 2) / FIXED_ONE_SQ));
+            int b = clamp((int) ((255 * (FIXED_ONE - y[i]) * white + FIXED_ONE_SQ / 2) / FIXED_ONE_SQ));
+            rgb[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    public static void rgbToHsv(int[] rgb, short[] h, short[] s, short[] v) {
+        rgbToHsv(rgb, 0, rgb.length, h, s, v);
+    }
+
+    /**
+     * Fixed-point HSV; hue is a fraction of a full turn in [0, FIXED_ONE).
+     */
+    public static void rgbToHsv(int[] rgb, int from, int to, short[] h, short[] s, short[] v) {
+        for (int i = from; i < to; i++) {
+            int p = rgb[i];
+            int r = (p >> 16) & 0xFF;
+            int g = (p >> 8) & 0xFF;
+            int b = p & 0xFF;
+            int max = Math.max(r, Math.max(g, b));
+            int min = Math.min(r, Math.min(g, b));
+            int delta = max - min;
+            v[i] = (short) ((max * FIXED_ONE + 127) / 255);
+            if (delta == 0) {
+                h[i] = 0;
+                s[i] = 0;
+                continue;
+            }
+            s[i] = (short) ((delta * FIXED_ONE + (max >> 1)) / max);
+            // Hue in units of delta / 6 of a turn: red, green and blue sectors start at 0, 2 and 4
+            int sixths;
+            if (r == max) {
+                sixths = g - b;
+            } else if (g == max) {
+                sixths = 2 * delta + b - r;
+            } else {
+                sixths = 4 * delta + r - g;
+            }
+            if (sixths < 0) {
+                sixths += 6 * delta;
+            }
+            int hue = (sixths * FIXED_ONE + 3 * delta) / (6 * delta);
+            h[i] = (short) (hue >= FIXED_ONE ? 0 : hue);
+        }
+    }
+
+    public static void hsvToRgb(short[] h, short[] s, short[] v, int[] rgb) {
+        hsvToRgb(h, s, v, rgb, 0, rgb.length);
+    }
+
+    public static void hsvToRgb(short[] h, short[] s, short[] v, int[] rgb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int value = v[i];
+            int saturation = s[i];
+            int r, g, b;
+            if (saturation == 0) {
+                r = g = b = fixedTo255(value);
+            } else {
+                int h6 = (h[i] % FIXED_ONE) * 6;
+                int sector = h6 / FIXED_ONE;
+                int f = h6 - sector * FIXED_ONE;
+                int pv = fixedTo255((int) ((long) value * (FIXED_ONE - saturation) / FIXED_ONE));
+                int qv = fixedTo255((int) ((long) value * (FIXED_ONE - (long) saturation * f / FIXED_ONE) / FIXED_ONE));
+                int tv = fixedTo255((int) ((long) value
+                        * (FIXED_ONE - (long) saturation * (FIXED_ONE - f) / FIXED_ONE) / FIXED_ONE));
+                int vv = fixedTo255(value);
+                switch (sector) {
+                    case 0 -> { r = vv; g = tv; b = pv; }
+                    case 1 -> { r = qv; g = vv; b = pv; }
+                    case 2 -> { r = pv; g = vv; b = tv; }
+                    case 3 -> { r = pv; g = qv; b = vv; }
+                    case 4 -> { r = tv; g = pv; b = vv; }
+                    default -> { r = vv; g = pv; b = qv; }
+                }
+            }
+            rgb[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    // Same arithmetic as java.awt.Color.RGBtoHSB
+    private static float hue(int r, int g, int b, int max, int min) {
+        if (max == 0 || max == min) {
+            return 0;
+        }
+        float range = (float) (max - min);
+        float redc = ((float) (max - r)) / range;
+        float greenc = ((float) (max - g)) / range;
+        float bluec = ((float) (max - b)) / range;
+        float hue;
+        if (r == max) {
+            hue = bluec - greenc;
+        } else if (g == max) {
+            hue = 2.0f + redc - bluec;
+        } else {
+            hue = 4.0f + greenc - redc;
+        }
+        hue = hue / 6.0f;
+        return hue < 0 ? hue + 1.0f : hue;
+    }
+
+    private static int to255(float component) {
+        return (int) (component * 255.0f + 0.5f);
+    }
+
+    private static int fixedTo255(int fixed) {
+        return (fixed * 255 + FIXED_ONE / 2) / FIXED_ONE;
+    }
+
+    private static int clamp(int component) {
+        return Math.max(0, Math.min(255, component));
+    }
+}
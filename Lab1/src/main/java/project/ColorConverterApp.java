@@ -3,7 +3,12 @@ package project;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
 
 public class ColorConverterApp extends JFrame {
     // RGB Components
@@ -31,10 +36,24 @@ public class ColorConverterApp extends JFrame {
     private final JTextField vField;
     private JPanel colorPreviewPanel;
     private JButton chooseColorButton;
+    private JButton separateImageButton;
     private boolean isUpdating = false;
-    private float preservedH = 0f;
-    private float preservedS = 1f;
+    // Last meaningful H and S, shown while the current color leaves them undefined
+    private final float[] preservedHS = {0f, 1f};
     private static final float LOW_VALUE_THRESHOLD = 0.02f;
+    // Scratch buffers for ColorConversions, reused on every update
+    private final float[] cmyk = new float[4];
+    private final float[] hsv = new float[3];
+    // Coalesced view refresh: requests only record the color, the timer applies the latest one
+    private static final int FRAME_MILLIS = 16;
+    private final Timer refreshTimer = new Timer(FRAME_MILLIS, e -> refreshView());
+    private long lastRefreshNanos;
+    private int pendingRgb;
+    private JComponent pendingSource;
+    private int shownRgb;
+    private final Control[] rgbControls;
+    private final Control[] cmykControls;
+    private final Control[] hsvControls;
 
     public ColorConverterApp() {
         setTitle("Color Converter");
@@ -94,14 +113,26 @@ public class ColorConverterApp extends JFrame {
         colorPreviewPanel.setPreferredSize(new Dimension(100, 100));
         colorPreviewPanel.setBorder(BorderFactory.createLineBorder(Color.BLACK));
         chooseColorButton = new JButton("Choose Color");
+        separateImageButton = new JButton("Separate Image...");
+        JPanel buttonPanel = new JPanel(new GridLayout(2, 1, 5, 5));
+        buttonPanel.add(chooseColorButton);
+        buttonPanel.add(separateImageButton);
         previewAndButtonPanel.add(colorPreviewPanel, BorderLayout.CENTER);
-        previewAndButtonPanel.add(chooseColorButton, BorderLayout.SOUTH);
+        previewAndButtonPanel.add(buttonPanel, BorderLayout.SOUTH);
         gbc.gridx = 1;
         gbc.gridy = 1;
         gbc.fill = GridBagConstraints.BOTH;
         add(previewAndButtonPanel, gbc);
+        rgbControls = new Control[]{new Control(rSlider, rField), new Control(gSlider, gField),
+                new Control(bSlider, bField)};
+        cmykControls = new Control[]{new Control(cSlider, cField), new Control(mSlider, mField),
+                new Control(ySlider, yField), new Control(kSlider, kField)};
+        hsvControls = new Control[]{new Control(hSlider, hField), new Control(sSlider, sField),
+                new Control(vSlider, vField)};
+        refreshTimer.setRepeats(false);
         addListeners();
-        updateColor(new Color(0, 0, 0));
+        pendingRgb = Color.BLACK.getRGB();
+        refreshView();
         pack();
         setLocationRelativeTo(null);
         setVisible(true);
@@ -136,11 +167,11 @@ public class ColorConverterApp extends JFrame {
         panel.add(textField, gbc);
     }
 
-    private void addDocumentListener(JTextField field, Runnable updateAction) {
+    private void addDocumentListener(JTextField field, Consumer<JTextField> updateAction) {
         field.getDocument().addDocumentListener(new DocumentListener() {
-            public void insertUpdate(DocumentEvent e) { updateAction.run(); }
-            public void removeUpdate(DocumentEvent e) { updateAction.run(); }
-            public void changedUpdate(DocumentEvent e) { updateAction.run(); }
+            public void insertUpdate(DocumentEvent e) { updateAction.accept(field); }
+            public void removeUpdate(DocumentEvent e) { updateAction.accept(field); }
+            public void changedUpdate(DocumentEvent e) { updateAction.accept(field); }
         });
     }
 
@@ -178,6 +209,42 @@ public class ColorConverterApp extends JFrame {
                 updateColor(newColor);
             }
         });
+        separateImageButton.addActionListener(e -> separateImage());
+    }
+
+    // Converts a whole image into CMYK and HSV planes next to it, off the event thread
+    private void separateImage() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File input = chooser.getSelectedFile();
+        File outDir = new File(input.getParentFile(), ImageSeparation.baseName(input) + "_planes");
+        separateImageButton.setEnabled(false);
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                BufferedImage src = ImageIO.read(input);
+                if (src == null) throw new IOException("Unsupported image: " + input.getName());
+                if (!outDir.isDirectory() && !outDir.mkdirs()) throw new IOException("Cannot create " + outDir);
+                int files = 0;
+                for (ImageSeparation.Model model : ImageSeparation.Model.values()) {
+                    BufferedImage[] planes = ImageSeparation.separate(src, model);
+                    files += ImageSeparation.write(planes, model, outDir, ImageSeparation.baseName(input), "png").length;
+                }
+                return files;
+            }
+
+            @Override
+            protected void done() {
+                separateImageButton.setEnabled(true);
+                try {
+                    JOptionPane.showMessageDialog(ColorConverterApp.this, get() + " planes written to " + outDir);
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(ColorConverterApp.this, cause.getMessage(), "Separation failed",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
     private void updateFromRGBSliders() {
@@ -185,16 +252,16 @@ public class ColorConverterApp extends JFrame {
         int r = rSlider.getValue();
         int g = gSlider.getValue();
         int b = bSlider.getValue();
-        updateColor(new Color(r, g, b));
+        requestColor(0xFF000000 | r << 16 | g << 8 | b, null);
     }
-    private void updateFromRGBFields() {
+    private void updateFromRGBFields(JTextField source) {
         if (isUpdating) return;
         try {
             int r = Integer.parseInt(rField.getText());
             int g = Integer.parseInt(gField.getText());
             int b = Integer.parseInt(bField.getText());
             if (r < 0 || r > 255 || g < 0 || g > 255 || b < 0 || b > 255) return;
-            updateColor(new Color(r, g, b));
+            requestColor(0xFF000000 | r << 16 | g << 8 | b, source);
         } catch (NumberFormatException e) { /* Ignore */ }
     }
     private void updateFromCMYKSliders() {
@@ -203,9 +270,9 @@ public class ColorConverterApp extends JFrame {
         float m = mSlider.getValue() / 100f;
         float y = ySlider.getValue() / 100f;
         float k = kSlider.getValue() / 100f;
-        updateColor(cmykToRgb(c, m, y, k));
+        requestColor(ColorConversions.cmykToRgb(c, m, y, k), null);
     }
-    private void updateFromCMYKFields() {
+    private void updateFromCMYKFields(JTextField source) {
         if (isUpdating) return;
         try {
             float c = Float.parseFloat(cField.getText()) / 100f;
@@ -213,7 +280,7 @@ public class ColorConverterApp extends JFrame {
             float y = Float.parseFloat(yField.getText()) / 100f;
             float k = Float.parseFloat(kField.getText()) / 100f;
             if (c < 0 || c > 1 || m < 0 || m > 1 || y < 0 || y > 1 || k < 0 || k > 1) return;
-            updateColor(cmykToRgb(c, m, y, k));
+            requestColor(ColorConversions.cmykToRgb(c, m, y, k), source);
         } catch (NumberFormatException e) { /* Ignore */ }
     }
 
@@ -222,113 +289,134 @@ public class ColorConverterApp extends JFrame {
         float h = hSlider.getValue() / 360f;
         float s = sSlider.getValue() / 100f;
         float v = vSlider.getValue() / 100f;
-        updateColor(Color.getHSBColor(h, s, v));
+        requestColor(ColorConversions.hsvToRgb(h, s, v), null);
     }
 
-    private void updateFromHSVFields() {
+    private void updateFromHSVFields(JTextField source) {
         if (isUpdating) return;
         try {
             float h = Float.parseFloat(hField.getText()) / 360f;
             float s = Float.parseFloat(sField.getText()) / 100f;
             float v = Float.parseFloat(vField.getText()) / 100f;
             if (h < 0 || h > 1 || s < 0 || s > 1 || v < 0 || v > 1) return;
-            updateColor(Color.getHSBColor(h, s, v));
+            requestColor(ColorConversions.hsvToRgb(h, s, v), source);
         } catch (NumberFormatException e) { /* Ignore */ }
     }
 
-    // Special method to update from V slider without resetting H and S sliders
+    // V slider keeps H and S as they are, so they survive passing through black
     private void updateFromVComponents() {
         if (isUpdating) return;
-        isUpdating = true;
-
         float h = hSlider.getValue() / 360f;
         float s = sSlider.getValue() / 100f;
         float v = vSlider.getValue() / 100f;
-        Color color = Color.getHSBColor(h, s, v);
+        requestColor(ColorConversions.hsvToRgb(h, s, v), vSlider);
+    }
 
-        // Update everything EXCEPT H and S components
-        updateRGB(color);
-        updateCMYK(color);
-        colorPreviewPanel.setBackground(color);
-        vField.setText(String.format("%.0f", v * 100)); // Only update V field
+    private void updateColor(Color color) {
+        requestColor(color.getRGB(), null);
+    }
 
+    // Records the latest color; the view catches up at most once per frame, however many events arrive
+    private void requestColor(int rgb, JComponent source) {
+        pendingRgb = rgb;
+        pendingSource = source;
+        if (!refreshTimer.isRunning()) {
+            long sinceRefresh = (System.nanoTime() - lastRefreshNanos) / 1_000_000;
+            refreshTimer.setInitialDelay((int) Math.max(0, FRAME_MILLIS - sinceRefresh));
+            refreshTimer.start();
+        }
+    }
+
+    // Brings every control to the pending color; controls already showing their value are left alone
+    private void refreshView() {
+        lastRefreshNanos = System.nanoTime();
+        int rgb = pendingRgb;
+        JComponent source = pendingSource;
+        isUpdating = true;
+        updateRGB(rgb, source);
+        updateCMYK(rgb, source);
+        updateHSV(rgb, source);
+        if (rgb != shownRgb) {
+            colorPreviewPanel.setBackground(new Color(rgb));
+            shownRgb = rgb;
+        }
         isUpdating = false;
     }
 
-    private void updateRGB(Color color) {
-        rSlider.setValue(color.getRed());
-        gSlider.setValue(color.getGreen());
-        bSlider.setValue(color.getBlue());
-        rField.setText(String.valueOf(color.getRed()));
-        gField.setText(String.valueOf(color.getGreen()));
-        bField.setText(String.valueOf(color.getBlue()));
+    private void updateRGB(int rgb, JComponent source) {
+        rgbControls[0].show((rgb >> 16) & 0xFF, source);
+        rgbControls[1].show((rgb >> 8) & 0xFF, source);
+        rgbControls[2].show(rgb & 0xFF, source);
     }
 
-    private void updateCMYK(Color color) {
-        float[] cmyk = rgbToCmyk(color.getRed(), color.getGreen(), color.getBlue());
-        cSlider.setValue((int) Math.round(cmyk[0] * 100));
-        mSlider.setValue((int) Math.round(cmyk[1] * 100));
-        ySlider.setValue((int) Math.round(cmyk[2] * 100));
-        kSlider.setValue((int) Math.round(cmyk[3] * 100));
-        cField.setText(String.format("%.0f", cmyk[0] * 100));
-        mField.setText(String.format("%.0f", cmyk[1] * 100));
-        yField.setText(String.format("%.0f", cmyk[2] * 100));
-        kField.setText(String.format("%.0f", cmyk[3] * 100));
+    private void updateCMYK(int rgb, JComponent source) {
+        ColorConversions.rgbToCmyk(rgb, cmyk);
+        for (int i = 0; i < 4; i++) {
+            cmykControls[i].show(Math.round(cmyk[i] * 100), source);
+        }
     }
 
-    private void updateHSV(Color color) {
-        float[] hsv = new float[3];
-        Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), hsv);
+    private void updateHSV(int rgb, JComponent source) {
+        if (source == vSlider) {
+            // Only the V field follows the slider, H and S stay where the user left them
+            hsvControls[2].show(vSlider.getValue(), source);
+            return;
+        }
+        ColorConversions.rgbToHsv(rgb, hsv);
+        displayHsv(hsv, preservedHS);
+        hsvControls[0].show(Math.round(hsv[0] * 360), source);
+        hsvControls[1].show(Math.round(hsv[1] * 100), source);
+        hsvControls[2].show(Math.round(hsv[2] * 100), source);
+    }
 
+    // Replaces H and S in hsv by the preserved ones where they are meaningless (near black, or
+    // grey for H) and remembers the meaningful ones; preservedHS is {H, S} and updated in place
+    static void displayHsv(float[] hsv, float[] preservedHS) {
         if (hsv[2] > LOW_VALUE_THRESHOLD) {
-            preservedS = hsv[1];
+            preservedHS[1] = hsv[1];
             if (hsv[1] > LOW_VALUE_THRESHOLD) {
-                preservedH = hsv[0];
+                preservedHS[0] = hsv[0];
             }
         }
-        float displayH = (hsv[2] <= LOW_VALUE_THRESHOLD || hsv[1] <= LOW_VALUE_THRESHOLD) ? preservedH : hsv[0];
-        float displayS = (hsv[2] <= LOW_VALUE_THRESHOLD) ? preservedS : hsv[1];
-
-        hSlider.setValue((int) Math.round(displayH * 360));
-        sSlider.setValue((int) Math.round(displayS * 100));
-        vSlider.setValue((int) Math.round(hsv[2] * 100));
-        hField.setText(String.format("%.0f", displayH * 360));
-        sField.setText(String.format("%.0f", displayS * 100));
-        vField.setText(String.format("%.0f", hsv[2] * 100));
+        if (hsv[2] <= LOW_VALUE_THRESHOLD || hsv[1] <= LOW_VALUE_THRESHOLD) {
+            hsv[0] = preservedHS[0];
+        }
+        if (hsv[2] <= LOW_VALUE_THRESHOLD) {
+            hsv[1] = preservedHS[1];
+        }
     }
 
-    // General update method, called from most places
-    private void updateColor(Color color) {
-        isUpdating = true;
-        updateRGB(color);
-        updateCMYK(color);
-        updateHSV(color);
-        colorPreviewPanel.setBackground(color);
-        isUpdating = false;
-    }
+    // Slider and text field of one component; remembers the number in the field to skip redundant setText
+    private static final class Control {
+        private final JSlider slider;
+        private final JTextField field;
+        private int shownText = Integer.MIN_VALUE;
+        private boolean writing;
 
-    private float[] rgbToCmyk(int r, int g, int b) {
-        if (r == 0 && g == 0 && b == 0) {
-            return new float[]{0, 0, 0, 1};
+        Control(JSlider slider, JTextField field) {
+            this.slider = slider;
+            this.field = field;
+            // Typing makes the remembered number stale
+            field.getDocument().addDocumentListener(new DocumentListener() {
+                public void insertUpdate(DocumentEvent e) { edited(); }
+                public void removeUpdate(DocumentEvent e) { edited(); }
+                public void changedUpdate(DocumentEvent e) { edited(); }
+            });
         }
-        float r_ = r / 255f;
-        float g_ = g / 255f;
-        float b_ = b / 255f;
-        float k = 1 - Math.max(r_, Math.max(g_, b_));
-        if (1 - k < 1e-9) { // Avoid division by zero for pure black
-            return new float[]{0, 0, 0, 1};
+
+        private void edited() {
+            if (!writing) shownText = Integer.MIN_VALUE;
         }
-        float c = (1 - r_ - k) / (1 - k);
-        float m = (1 - g_ - k) / (1 - k);
-        float y = (1 - b_ - k) / (1 - k);
-        return new float[]{c, m, y, k};
-    }
 
-    private Color cmykToRgb(float c, float m, float y, float k) {
-        int r = (int) Math.round(255.0f * (1 - c) * (1 - k));
-        int g = (int) Math.round(255.0f * (1 - m) * (1 - k));
-        int b = (int) Math.round(255.0f * (1 - y) * (1 - k));
-        return new Color(r, g, b);
+        // The field the user is typing in keeps its text
+        void show(int value, JComponent source) {
+            if (slider.getValue() != value) slider.setValue(value);
+            if (source == field || value == shownText) return;
+            writing = true;
+            field.setText(Integer.toString(value));
+            writing = false;
+            shownText = value;
+        }
     }
 
     public static void main(String[] args) {
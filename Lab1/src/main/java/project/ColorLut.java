@@ -0,0 +1,313 @@
+package project;
+
+/**
+ * 3D lookup table for RGB to CMYK / HSV conversion, with an exact-match cache for hot colors.
+ * <p>
+ * The table holds the exact conversion ({@link ColorConversions}, the functions behind the
+ * sliders) at gridSize^3 nodes placed on integer RGB values, and interpolates inside each
+ * cell, trilinearly (8 corners) or tetrahedrally (4 corners). It is built lazily on first
+ * use and is immutable afterwards, so one instance can be shared between threads and images.
+ * <p>
+ * Real images repeat colors, so every thread also keeps a small direct-mapped cache from
+ * packed RGB to the converted components. The cache memoises the table result, so output
+ * does not depend on what happens to be cached.
+ */
+public final class ColorLut {
+
+    public enum Interpolation { TRILINEAR, TETRAHEDRAL }
+
+    private static final int CACHE_BITS = 14;
+    // Cells whose corners differ by more than this in any component are converted exactly
+    private static final float STEEP = 0.1f;
+
+    private final ImageSeparation.Model model;
+    private final int gridSize;
+    private final Interpolation interpolation;
+    private final int channels;
+    // Lower node and position inside the cell for every 8-bit channel value
+    private final int[] cellOf = new int[256];
+    private final float[] fractionOf = new float[256];
+    private final int[] nodeValue;
+    private final ThreadLocal<Cache> cache;
+    private volatile Table table;
+
+    // Node values, channels per node, and the cells that are too steep to interpolate
+    private record Table(float[] nodes, boolean[] exact) {
+    }
+
+    public ColorLut(ImageSeparation.Model model, int gridSize, Interpolation interpolation) {
+        if (gridSize < 2 || gridSize > 256) {
+            throw new IllegalArgumentException("Grid size must be in [2, 256]: " + gridSize);
+        }
+        this.model = model;
+        this.gridSize = gridSize;
+        this.interpolation = interpolation;
+        this.channels = model.channelCount();
+        this.nodeValue = new int[gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            nodeValue[i] = Math.round(i * 255f / (gridSize - 1));
+        }
+        for (int v = 0, cell = 0; v < 256; v++) {
+            while (cell < gridSize - 2 && v >= nodeValue[cell + 1]) {
+                cell++;
+            }
+            cellOf[v] = cell;
+            fractionOf[v] = (float) (v - nodeValue[cell]) / (nodeValue[cell + 1] - nodeValue[cell]);
+        }
+        this.cache = ThreadLocal.withInitial(() -> new Cache(channels));
+    }
+
+    public ImageSeparation.Model model() {
+        return model;
+    }
+
+    public int gridSize() {
+        return gridSize;
+    }
+
+    public Interpolation interpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Converts rgb[from, to) into the planes (one per channel of the model), element i to element i.
+     */
+    public void convert(int[] rgb, int from, int to, float[][] planes) {
+        if (planes.length != channels) {
+            throw new IllegalArgumentException(model + " needs " + channels + " planes, got " + planes.length);
+        }
+        Table lut = table();
+        Cache hot = cache.get();
+        int[] keys = hot.keys;
+        float[] values = hot.values;
+        float[] p0 = planes[0];
+        float[] p1 = planes[1];
+        float[] p2 = planes[2];
+        float[] p3 = channels > 3 ? planes[3] : null;
+        int previous = -1;
+        int base = 0;
+        for (int i = from; i < to; i++) {
+            int key = rgb[i] & 0xFFFFFF;
+            // Runs of one color skip even the cache lookup
+            if (key != previous) {
+                int slot = (key * 0x9E3779B1) >>> (32 - CACHE_BITS);
+                base = slot * channels;
+                if (keys[slot] != key) {
+                    convert(lut, key, values, base, hot.scratch);
+                    keys[slot] = key;
+                }
+                previous = key;
+            }
+            p0[i] = values[base];
+            p1[i] = values[base + 1];
+            p2[i] = values[base + 2];
+            if (p3 != null) {
+                p3[i] = values[base + 3];
+            }
+        }
+    }
+
+    /**
+     * Converts one color into out[0..channels).
+     */
+    public void convert(int rgb, float[] out) {
+        convert(table(), rgb & 0xFFFFFF, out, 0, cache.get().scratch);
+    }
+
+    private void convert(Table lut, int rgb, float[] out, int offset, float[] scratch) {
+        int cell = ((cellOf[rgb >> 16] * (gridSize - 1)) + cellOf[(rgb >> 8) & 0xFF]) * (gridSize - 1)
+                + cellOf[rgb & 0xFF];
+        if (!lut.exact[cell]) {
+            interpolate(lut.nodes, rgb, out, offset);
+            return;
+        }
+        if (model == ImageSeparation.Model.CMYK) {
+            ColorConversions.rgbToCmyk(rgb, scratch);
+        } else {
+            ColorConversions.rgbToHsv(rgb, scratch);
+        }
+        System.arraycopy(scratch, 0, out, offset, channels);
+    }
+
+    /**
+     * Share of table cells converted exactly instead of interpolated; builds the table.
+     */
+    public double exactShare() {
+        boolean[] exact = table().exact;
+        int count = 0;
+        for (boolean e : exact) {
+            if (e) {
+                count++;
+            }
+        }
+        return (double) count / exact.length;
+    }
+
+    private Table table() {
+        Table lut = table;
+        if (lut == null) {
+            synchronized (this) {
+                lut = table;
+                if (lut == null) {
+                    table = lut = build();
+                }
+            }
+        }
+        return lut;
+    }
+
+    private Table build() {
+        float[] lut = new float[gridSize * gridSize * gridSize * channels];
+        float[] node = new float[4];
+        int index = 0;
+        for (int r : nodeValue) {
+            for (int g : nodeValue) {
+                for (int b : nodeValue) {
+                    int rgb = r << 16 | g << 8 | b;
+                    if (model == ImageSeparation.Model.CMYK) {
+                        ColorConversions.rgbToCmyk(rgb, node);
+                    } else {
+                        ColorConversions.rgbToHsv(rgb, node);
+                    }
+                    System.arraycopy(node, 0, lut, index, channels);
+                    index += channels;
+                }
+            }
+        }
+        int cells = gridSize - 1;
+        boolean[] exact = new boolean[cells * cells * cells];
+        int dr = gridSize * gridSize * channels;
+        int dg = gridSize * channels;
+        int db = channels;
+        int[] corners = {0, db, dg, dg + db, dr, dr + db, dr + dg, dr + dg + db};
+        for (int r = 0, cell = 0; r < cells; r++) {
+            for (int g = 0; g < cells; g++) {
+                for (int b = 0; b < cells; b++, cell++) {
+                    int c000 = ((r * gridSize + g) * gridSize + b) * channels;
+                    for (int c = 0; c < channels && !exact[cell]; c++) {
+                        float reference = lut[c000 + c];
+                        float min = reference, max = reference;
+                        for (int corner : corners) {
+                            float v = lut[c000 + corner + c];
+                            if (model == ImageSeparation.Model.HSV && c == 0) {
+                                v = unwrap(v, reference);
+                            }
+                            min = Math.min(min, v);
+                            max = Math.max(max, v);
+                        }
+                        exact[cell] = max - min > STEEP;
+                    }
+                }
+            }
+        }
+        return new Table(lut, exact);
+    }
+
+    private void interpolate(float[] lut, int rgb, float[] out, int offset) {
+        int r = rgb >> 16;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        float fr = fractionOf[r];
+        float fg = fractionOf[g];
+        float fb = fractionOf[b];
+        // Corner offsets along each axis
+        int dr = gridSize * gridSize * channels;
+        int dg = gridSize * channels;
+        int db = channels;
+        int c000 = ((cellOf[r] * gridSize + cellOf[g]) * gridSize + cellOf[b]) * channels;
+        boolean hue = model == ImageSeparation.Model.HSV;
+        if (interpolation == Interpolation.TRILINEAR) {
+            for (int c = 0; c < channels; c++) {
+                int i = c000 + c;
+                float v000 = lut[i];
+                float v001 = lut[i + db];
+                float v010 = lut[i + dg];
+                float v011 = lut[i + dg + db];
+                float v100 = lut[i + dr];
+                float v101 = lut[i + dr + db];
+                float v110 = lut[i + dr + dg];
+                float v111 = lut[i + dr + dg + db];
+                if (hue && c == 0) {
+                    v001 = unwrap(v001, v000);
+                    v010 = unwrap(v010, v000);
+                    v011 = unwrap(v011, v000);
+                    v100 = unwrap(v100, v000);
+                    v101 = unwrap(v101, v000);
+                    v110 = unwrap(v110, v000);
+                    v111 = unwrap(v111, v000);
+                }
+                float v00 = v000 + (v001 - v000) * fb;
+                float v01 = v010 + (v011 - v010) * fb;
+                float v10 = v100 + (v101 - v100) * fb;
+                float v11 = v110 + (v111 - v110) * fb;
+                float v0 = v00 + (v01 - v00) * fg;
+                float v1 = v10 + (v11 - v10) * fg;
+                out[offset + c] = finish(v0 + (v1 - v0) * fr, hue && c == 0);
+            }
+            return;
+        }
+        // Tetrahedral: walk from corner 000 to 111 along the axes in order of decreasing fraction
+        float f1, f2, f3;
+        int a, ab;
+        if (fr >= fg) {
+            if (fg >= fb) {
+                f1 = fr; f2 = fg; f3 = fb; a = dr; ab = dr + dg;
+            } else if (fr >= fb) {
+                f1 = fr; f2 = fb; f3 = fg; a = dr; ab = dr + db;
+            } else {
+                f1 = fb; f2 = fr; f3 = fg; a = db; ab = dr + db;
+            }
+        } else {
+            if (fr >= fb) {
+                f1 = fg; f2 = fr; f3 = fb; a = dg; ab = dr + dg;
+            } else if (fg >= fb) {
+                f1 = fg; f2 = fb; f3 = fr; a = dg; ab = dg + db;
+            } else {
+                f1 = fb; f2 = fg; f3 = fr; a = db; ab = dg + db;
+            }
+        }
+        int abc = dr + dg + db;
+        for (int c = 0; c < channels; c++) {
+            int i = c000 + c;
+            float v0 = lut[i];
+            float v1 = lut[i + a];
+            float v2 = lut[i + ab];
+            float v3 = lut[i + abc];
+            if (hue && c == 0) {
+                v1 = unwrap(v1, v0);
+                v2 = unwrap(v2, v0);
+                v3 = unwrap(v3, v0);
+            }
+            out[offset + c] = finish(v0 + (v1 - v0) * f1 + (v2 - v1) * f2 + (v3 - v2) * f3, hue && c == 0);
+        }
+    }
+
+    // Hue is circular: move a corner hue to the same turn as the reference before interpolating
+    private static float unwrap(float hue, float reference) {
+        if (hue - reference > 0.5f) {
+            return hue - 1;
+        }
+        if (reference - hue > 0.5f) {
+            return hue + 1;
+        }
+        return hue;
+    }
+
+    private static float finish(float value, boolean hue) {
+        if (hue) {
+            return value < 0 ? value + 1 : value >= 1 ? value - 1 : value;
+        }
+        return value;
+    }
+
+    private static final class Cache {
+        final int[] keys = new int[1 << CACHE_BITS];
+        final float[] values;
+        final float[] scratch = new float[4];
+
+        Cache(int channels) {
+            java.util.Arrays.fill(keys, -1);
+            values = new float[(1 << CACHE_BITS) * channels];
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package project;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Whole-image conversion into CMYK separations or HSV planes.
+ * <p>
+ * Each channel becomes its own 8-bit gray plane (TYPE_BYTE_GRAY), value = component * 255:
+ * 255 is 100% ink for C, M, Y, K and a full turn / full saturation / full value for H, S, V.
+ * The math is the same as the sliders ({@link ColorConversions}, identical to
+ * {@code Color.RGBtoHSB}). Rows are split into bands that are converted in parallel; every
+ * band reuses one row of scratch buffers, so the only large allocations are the planes.
+ * <p>
+ * Command line: {@code java project.ImageSeparation <image> <outDir> [cmyk|hsv|both] [--threads N]
+ * [--format png|bmp|...] [--lut 33|65] [--trilinear]}
+ */
+public final class ImageSeparation {
+
+    // Roughly 256K pixels per band: enough work to amortise scheduling, small enough to balance cores
+    private static final int BAND_PIXELS = 1 << 18;
+
+    public enum Model {
+        CMYK("C", "M", "Y", "K"),
+        HSV("H", "S", "V");
+
+        private final String[] channels;
+
+        Model(String... channels) {
+            this.channels = channels;
+        }
+
+        public String[] channels() {
+            return channels.clone();
+        }
+
+        public int channelCount() {
+            return channels.length;
+        }
+    }
+
+    private ImageSeparation() {
+    }
+
+    /**
+     * Separates the image on the common fork/join pool.
+     */
+    public static BufferedImage[] separate(BufferedImage src, Model model) {
+        return separate(src, model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Separates the image on the given pool; returns one TYPE_BYTE_GRAY image per channel,
+     * in the order of {@link Model#channels()}.
+     */
+    public static BufferedImage[] separate(BufferedImage src, Model model, ForkJoinPool pool) {
+        return separate(src, model, null, pool);
+    }
+
+    /**
+     * Same, converting through a lookup table of the same model (null - exact math).
+     */
+    public static BufferedImage[] separate(BufferedImage src, Model model, ColorLut lut, ForkJoinPool pool) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage[] planes = new BufferedImage[model.channelCount()];
+        byte[][] data = new byte[planes.length][];
+        for (int i = 0; i < planes.length; i++) {
+            planes[i] = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            data[i] = ((DataBufferByte) planes[i].getRaster().getDataBuffer()).getData();
+        }
+        separate(src, model, lut, data, pool);
+        return planes;
+    }
+
+    /**
+     * Separates the image into caller-provided planes of width * height bytes, row-major;
+     * lut - null or a lookup table of the same model.
+     */
+    public static void separate(BufferedImage src, Model model, ColorLut lut, byte[][] planes, ForkJoinPool pool) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (lut != null && lut.model() != model) {
+            throw new IllegalArgumentException("Lookup table is for " + lut.model() + ", not " + model);
+        }
+        if (planes.length != model.channelCount()) {
+            throw new IllegalArgumentException(model + " needs " + model.channelCount() + " planes, got " + planes.length);
+        }
+        for (byte[] plane : planes) {
+            if (plane.length < (long) width * height) {
+                throw new IllegalArgumentException("Plane too small for " + width + "x" + height);
+            }
+        }
+        int bandRows = Math.max(1, BAND_PIXELS / width);
+        int bands = (height + bandRows - 1) / bandRows;
+        try {
+            pool.submit(() -> IntStream.range(0, bands).parallel().forEach(band -> {
+                int y0 = band * bandRows;
+                convertBand(src, model, lut, planes, y0, Math.min(height, y0 + bandRows));
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Separation interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void convertBand(BufferedImage src, Model model, ColorLut lut, byte[][] planes, int y0, int y1) {
+        int width = src.getWidth();
+        int[] row = new int[width];
+        float[][] components = new float[model.channelCount()][width];
+        for (int y = y0; y < y1; y++) {
+            readRow(src, y, row);
+            if (lut != null) {
+                lut.convert(row, 0, width, components);
+            } else if (model == Model.CMYK) {
+                ColorConversions.rgbToCmyk(row, components[0], components[1], components[2], components[3]);
+            } else {
+                ColorConversions.rgbToHsv(row, components[0], components[1], components[2]);
+            }
+            int offset = y * width;
+            for (int c = 0; c < components.length; c++) {
+                float[] component = components[c];
+                byte[] plane = planes[c];
+                for (int x = 0; x < width; x++) {
+                    // Same as Math.round(component * 255f): the float product plus 0.5 is exact in double
+                    plane[offset + x] = (byte) (int) (component[x] * 255f + 0.5);
+                }
+            }
+        }
+    }
+
+    // Packed RGB of row y; direct raster access for the usual types, getRGB for the rest
+    private static void readRow(BufferedImage src, int y, int[] row) {
+        int width = src.getWidth();
+        // Subimages share the parent's buffer with an offset; leave them to getRGB
+        int type = src.getRaster().getParent() == null ? src.getType() : BufferedImage.TYPE_CUSTOM;
+        switch (type) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> {
+                int[] data = ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+                System.arraycopy(data, y * width, row, 0, width);
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                byte[] data = ((DataBufferByte) src.getRaster().getDataBuffer()).getData();
+                for (int x = 0, i = y * width * 3; x < width; x++, i += 3) {
+                    row[x] = (data[i + 2] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i] & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR -> {
+                byte[] data = ((DataBufferByte) src.getRaster().getDataBuffer()).getData();
+                for (int x = 0, i = y * width * 4; x < width; x++, i += 4) {
+                    row[x] = (data[i + 3] & 0xFF) << 16 | (data[i + 2] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+                }
+            }
+            default -> src.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    /**
+     * Writes the planes as {@code <baseName>_<channel>.<format>} into dir, one file per thread.
+     */
+    public static File[] write(BufferedImage[] planes, Model model, File dir, String baseName, String format) {
+        String[] channels = model.channels();
+        File[] files = new File[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            files[i] = new File(dir, baseName + "_" + channels[i] + "." + format);
+        }
+        IntStream.range(0, planes.length).parallel().forEach(i -> {
+            try {
+                if (!ImageIO.write(planes[i], format, files[i])) {
+                    throw new IllegalArgumentException("No writer for format " + format);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return files;
+    }
+
+    static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java project.ImageSeparation <image> <outDir> [cmyk|hsv|both]"
+                    + " [--threads N] [--format png] [--lut 33|65] [--trilinear]");
+            System.exit(2);
+        }
+        File input = new File(args[0]);
+        File outDir = new File(args[1]);
+        String mode = "both";
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format = "png";
+        int lutSize = 0;
+        ColorLut.Interpolation interpolation = ColorLut.Interpolation.TETRAHEDRAL;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--format" -> format = args[++i];
+                case "--lut" -> lutSize = Integer.parseInt(args[++i]);
+                case "--trilinear" -> interpolation = ColorLut.Interpolation.TRILINEAR;
+                default -> mode = args[i].toLowerCase(Locale.ROOT);
+            }
+        }
+        BufferedImage src = ImageIO.read(input);
+        if (src == null) {
+            throw new IOException("Unsupported image: " + input);
+        }
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create " + outDir);
+        }
+        Model[] models = switch (mode) {
+            case "cmyk" -> new Model[]{Model.CMYK};
+            case "hsv" -> new Model[]{Model.HSV};
+            case "both" -> Model.values();
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        };
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Model model : models) {
+                long start = System.nanoTime();
+                ColorLut lut = lutSize > 0 ? new ColorLut(model, lutSize, interpolation) : null;
+                BufferedImage[] planes = separate(src, model, lut, pool);
+                long converted = System.nanoTime();
+                File[] files = write(planes, model, outDir, baseName(input), format);
+                long written = System.nanoTime();
+                double megapixels = (double) src.getWidth() * src.getHeight() / 1e6;
+                System.out.printf(Locale.ROOT, "%s%s: %.1f MP in %d ms (%.1f MP/s, %d threads), written in %d ms%n",
+                        model, lut == null ? "" : " via " + lutSize + "^3 " + interpolation + " LUT",
+                        megapixels, (converted - start) / 1_000_000,
+                        megapixels / ((converted - start) / 1e9), threads, (written - converted) / 1_000_000);
+                for (File file : files) {
+                    System.out.println("  " + file);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
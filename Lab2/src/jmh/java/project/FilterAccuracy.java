@@ -0,0 +1,380 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Проверка точности фильтров: быстрые ядра сравниваются с наивными попиксельными эталонами,
+ * а разные пути выполнения одного фильтра - между собой. Все проверки точные, допустимое
+ * число несовпавших пикселей - 0:
+ * <ul>
+ *   <li>эталоны - Box Blur и медиана перебором окна (2r + 1)^2, пороговая обработка всеми пятью
+ *   методами по сумме и сумме квадратов яркостей окна, тоже посчитанным перебором; изображения
+ *   TYPE_INT_RGB, TYPE_3BYTE_BGR и (для порогов) TYPE_BYTE_GRAY, то есть все прямые пути
+ *   доступа к растру. Пиксели ближе радиуса к краю нулевые;</li>
+ *   <li>потоки - результат на нескольких потоках и под наблюдателем совпадает с последовательным;</li>
+ *   <li>цепочка - {@link Pipeline} совпадает с фильтрами {@link ImageFilters}, применёнными по очереди;</li>
+ *   <li>отображение - цепочка над {@link MappedImage} совпадает с цепочкой в куче, в том числе
+ *   при продолжении прерванного расчёта.</li>
+ * </ul>
+ * Завершается с кодом 1, если хоть одна проверка не сошлась. Запускается {@code mvn -P jmh verify}
+ * перед бенчмарками или напрямую:
+ * {@code java --add-modules jdk.incubator.vector -cp ... project.FilterAccuracy}.
+ */
+public final class FilterAccuracy {
+
+    // Нечётные размеры: строки и полосы не делятся нацело ни на окна, ни на векторы
+    private static final int WIDTH = 257;
+    private static final int HEIGHT = 389;
+    private static final int WINDOW = 15;
+
+    private static final String[] METHODS = {"niblack", "sauvola", "bradley", "wolf", "phansalkar"};
+
+    /**
+     * Пиксели результата построчно, 0xRRGGBB.
+     */
+    @FunctionalInterface
+    private interface Pixels {
+        int[] get() throws IOException;
+    }
+
+    private record Check(String name, Pixels expected, Pixels actual) {
+    }
+
+    private static final ParallelExecutor SEQUENTIAL = ParallelExecutor.sequential();
+    private static final ParallelExecutor PARALLEL = new ParallelExecutor(4);
+    private static final ParallelExecutor MONITORED = PARALLEL.withMonitor(new ParallelExecutor.Monitor() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void bandDone(int y0, int y1, int done, int total, int pass, int passes) {
+        }
+    });
+
+    private FilterAccuracy() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        long start = System.nanoTime();
+        Path dir = Files.createTempDirectory("filter-accuracy");
+        boolean failed = false;
+        try {
+            List<Check> checks = checks(dir);
+            System.out.printf(Locale.ROOT, "%-76s %9s  %s%n", "проверка", "пикселей", "первый");
+            for (Check check : checks) {
+                int[] expected = check.expected().get();
+                int[] actual = check.actual().get();
+                int differing = 0;
+                int first = -1;
+                for (int i = 0; i < Math.max(expected.length, actual.length); i++) {
+                    if (i >= expected.length || i >= actual.length || expected[i] != actual[i]) {
+                        differing++;
+                        first = first < 0 ? i : first;
+                    }
+                }
+                failed |= differing > 0;
+                System.out.printf(Locale.ROOT, "%-76s %9d  %s%n", check.name(), differing,
+                        first < 0 ? "-" : "(" + first % WIDTH + ", " + first / WIDTH + ")  ОШИБКА");
+            }
+            System.out.printf(Locale.ROOT, "проверок: %d, изображения %dx%d, %d мс%n", checks.size(), WIDTH, HEIGHT,
+                    (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            PARALLEL.shutdown();
+            try (var files = Files.list(dir)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static List<Check> checks(Path dir) {
+        BufferedImage rgb = image(BufferedImage.TYPE_INT_RGB, 1);
+        BufferedImage bgr = image(BufferedImage.TYPE_3BYTE_BGR, 2);
+        BufferedImage gray = image(BufferedImage.TYPE_BYTE_GRAY, 3);
+        List<Check> checks = new ArrayList<>();
+
+        // Эталоны
+        for (BufferedImage src : List.of(rgb, bgr)) {
+            for (int radius : new int[]{1, 4}) {
+                checks.add(new Check("blur r=" + radius + " = перебор окна, " + typeName(src),
+                        () -> naiveBlur(rgbOf(src), radius),
+                        () -> rgbOf(ImageFilters.applyBoxBlur(src, radius, SEQUENTIAL))));
+            }
+            for (int radius : new int[]{1, 3}) {
+                checks.add(new Check("median r=" + radius + " = перебор окна, " + typeName(src),
+                        () -> naiveMedian(rgbOf(src), radius),
+                        () -> rgbOf(ImageFilters.applyMedian(src, radius, SEQUENTIAL))));
+            }
+        }
+        for (BufferedImage src : List.of(rgb, bgr, gray)) {
+            for (String name : METHODS) {
+                LocalThreshold.Method method = LocalThreshold.method(name, LocalThreshold.defaultK(name));
+                checks.add(new Check(name + ":" + WINDOW + " = перебор окна, " + typeName(src),
+                        () -> naiveThreshold(rgbOf(src), WINDOW, method),
+                        () -> rgbOf(ImageFilters.applyLocalThreshold(src, WINDOW, method, SEQUENTIAL))));
+            }
+        }
+        for (String name : new String[]{"sauvola", "wolf"}) {
+            LocalThreshold.Method method = LocalThreshold.method(name, LocalThreshold.defaultK(name));
+            checks.add(new Check(name + ":" + WINDOW + " WindowStatistics = перебор окна, " + typeName(rgb),
+                    () -> naiveThreshold(rgbOf(rgb), WINDOW, method),
+                    () -> rgbOf(LocalThreshold.WindowStatistics.compute(rgb, WINDOW, SEQUENTIAL)
+                            .apply(method, SEQUENTIAL))));
+        }
+
+        // Потоки: кэш яркостей сбрасывается, чтобы каждый исполнитель считал их сам
+        List<Filter> filters = List.of(
+                new Filter("blur r=3", (src, ex) -> ImageFilters.applyBoxBlur(src, 3, ex)),
+                new Filter("gauss sigma=2.5", (src, ex) -> ImageFilters.applyGaussianBlur(src, 2.5, ex)),
+                new Filter("median r=2", (src, ex) -> ImageFilters.applyMedian(src, 2, ex)),
+                new Filter("niblack:" + WINDOW, (src, ex) -> ImageFilters.applyNiblack(src, WINDOW, -0.2, ex)),
+                new Filter("wolf:" + WINDOW, (src, ex) ->
+                        ImageFilters.applyLocalThreshold(src, WINDOW, LocalThreshold.wolf(0.5), ex)),
+                new Filter("median:1,blur:2,gray,sauvola:15:0.2", (src, ex) ->
+                        Pipeline.parse("median:1,blur:2,gray,sauvola:15:0.2").apply(src, ex)));
+        for (Filter filter : filters) {
+            for (ParallelExecutor executor : List.of(PARALLEL, MONITORED)) {
+                checks.add(new Check(filter.name() + ", " + executorName(executor) + " = 1 поток",
+                        () -> filter.run(rgb, SEQUENTIAL),
+                        () -> filter.run(rgb, executor)));
+            }
+        }
+
+        // Цепочка против фильтров по очереди
+        for (BufferedImage src : List.of(rgb, gray)) {
+            for (String name : new String[]{"niblack", "sauvola", "bradley", "phansalkar"}) {
+                double k = LocalThreshold.defaultK(name);
+                LocalThreshold.Method method = LocalThreshold.method(name, k);
+                checks.add(new Check("pipeline " + name + ":" + WINDOW + " = LocalThreshold, " + typeName(src),
+                        () -> rgbOf(ImageFilters.applyLocalThreshold(src, WINDOW, method, SEQUENTIAL)),
+                        () -> rgbOf(Pipeline.parse(name + ":" + WINDOW + ":" + k).apply(src, PARALLEL))));
+            }
+        }
+        checks.add(new Check("pipeline median:1,blur:2,sauvola:15:0.2 = по очереди",
+                () -> rgbOf(ImageFilters.applySauvola(ImageFilters.applyBoxBlur(
+                        ImageFilters.applyMedian(rgb, 1, SEQUENTIAL), 2, SEQUENTIAL), 15, 0.2, SEQUENTIAL)),
+                () -> rgbOf(Pipeline.parse("median:1,blur:2,sauvola:15:0.2").apply(rgb, PARALLEL))));
+
+        // Отображение против кучи
+        for (String spec : new String[]{"blur:3", "median:2", "gray", "sauvola:15:0.2", "bradley:15:0.15",
+                "median:1,blur:2,gray,bradley:15:0.15"}) {
+            Pipeline pipeline = Pipeline.parse(spec);
+            checks.add(new Check("mapped " + spec + " = в куче",
+                    () -> rgbOf(pipeline.apply(rgb, SEQUENTIAL)),
+                    () -> mapped(dir, rgb, pipeline, HEIGHT)));
+        }
+        Pipeline resumed = Pipeline.parse("median:1,blur:2,gray,bradley:15:0.15");
+        checks.add(new Check("mapped " + resumed + ", продолжение с середины = в куче",
+                () -> rgbOf(resumed.apply(rgb, SEQUENTIAL)),
+                () -> mapped(dir, rgb, resumed, HEIGHT / 2)));
+        return checks;
+    }
+
+    private record Filter(String name, Operation operation) {
+        int[] run(BufferedImage src, ParallelExecutor executor) {
+            GrayPlane.invalidate(src);
+            return rgbOf(operation.apply(src, executor));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        BufferedImage apply(BufferedImage src, ParallelExecutor executor);
+    }
+
+    /**
+     * Цепочка над отображением. Строки [0, done) результата заранее переписываются из полного
+     * расчёта, как после прерванного запуска; done = HEIGHT - обычный расчёт с нуля.
+     */
+    private static int[] mapped(Path dir, BufferedImage image, Pipeline pipeline, int done) throws IOException {
+        Path source = dir.resolve("source." + MappedImage.EXTENSION);
+        Path full = dir.resolve("full." + MappedImage.EXTENSION);
+        Path partial = dir.resolve("partial." + MappedImage.EXTENSION);
+        try (MappedImage src = MappedImage.of(image, source);
+             MappedImage result = MappedImage.create(full, WIDTH, HEIGHT, pipeline.output())) {
+            pipeline.apply(src, result, PARALLEL);
+            if (done == HEIGHT) {
+                return rgbOf(result.toBufferedImage());
+            }
+            try (MappedImage rest = MappedImage.create(partial, WIDTH, HEIGHT, pipeline.output())) {
+                int[] rows = new int[done * WIDTH];
+                result.readRows(0, done, rows, 0);
+                rest.writeRows(0, done, rows, 0);
+                pipeline.apply(src, rest, PARALLEL);
+                return rgbOf(rest.toBufferedImage());
+            }
+        }
+    }
+
+    /**
+     * Box Blur перебором окна по каждому каналу.
+     */
+    private static int[] naiveBlur(int[] rgb, int radius) {
+        int[] result = new int[rgb.length];
+        int area = (2 * radius + 1) * (2 * radius + 1);
+        for (int y = radius; y < HEIGHT - radius; y++) {
+            for (int x = radius; x < WIDTH - radius; x++) {
+                int pixel = 0;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int sum = 0;
+                    for (int dy = -radius; dy <= radius; dy++) {
+                        for (int dx = -radius; dx <= radius; dx++) {
+                            sum += (rgb[(y + dy) * WIDTH + x + dx] >> shift) & 0xFF;
+                        }
+                    }
+                    pixel |= sum / area << shift;
+                }
+                result[y * WIDTH + x] = pixel;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Медиана перебором: сортировка значений канала в окне.
+     */
+    private static int[] naiveMedian(int[] rgb, int radius) {
+        int[] result = new int[rgb.length];
+        int[] window = new int[(2 * radius + 1) * (2 * radius + 1)];
+        for (int y = radius; y < HEIGHT - radius; y++) {
+            for (int x = radius; x < WIDTH - radius; x++) {
+                int pixel = 0;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int n = 0;
+                    for (int dy = -radius; dy <= radius; dy++) {
+                        for (int dx = -radius; dx <= radius; dx++) {
+                            window[n++] = (rgb[(y + dy) * WIDTH + x + dx] >> shift) & 0xFF;
+                        }
+                    }
+                    Arrays.sort(window);
+                    pixel |= window[window.length / 2] << shift;
+                }
+                result[y * WIDTH + x] = pixel;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Пороговая обработка с суммами окна, посчитанными перебором; для Вольфа - Жолиона
+     * статистика всего изображения набирается отдельным проходом по тем же окнам.
+     */
+    private static int[] naiveThreshold(int[] rgb, int windowSize, LocalThreshold.Method method) {
+        int radius = windowSize / 2;
+        int count = windowSize * windowSize;
+        int[] gray = new int[rgb.length];
+        int minGray = 255, maxGray = 0;
+        for (int i = 0; i < rgb.length; i++) {
+            int r = (rgb[i] >> 16) & 0xFF, g = (rgb[i] >> 8) & 0xFF, b = rgb[i] & 0xFF;
+            gray[i] = (299 * r + 587 * g + 114 * b) / 1000;
+            minGray = Math.min(minGray, gray[i]);
+            maxGray = Math.max(maxGray, gray[i]);
+        }
+        double[] mean = new double[rgb.length];
+        double[] stdDev = new double[rgb.length];
+        double maxStdDev = 0;
+        for (int y = radius; y < HEIGHT - radius; y++) {
+            for (int x = radius; x < WIDTH - radius; x++) {
+                long sum = 0, sumSq = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int v = gray[(y + dy) * WIDTH + x + dx];
+                        sum += v;
+                        sumSq += (long) v * v;
+                    }
+                }
+                double m = (double) sum / count;
+                mean[y * WIDTH + x] = m;
+                stdDev[y * WIDTH + x] = Math.sqrt(Math.max(0, (double) sumSq / count - m * m));
+                maxStdDev = Math.max(maxStdDev, stdDev[y * WIDTH + x]);
+            }
+        }
+        StreamingThreshold.Formula formula = method.formula(
+                new LocalThreshold.GlobalStats(minGray, maxGray, maxStdDev));
+        int[] result = new int[rgb.length];
+        for (int y = radius; y < HEIGHT - radius; y++) {
+            for (int x = radius; x < WIDTH - radius; x++) {
+                int i = y * WIDTH + x;
+                result[i] = gray[i] > formula.threshold(mean[i], stdDev[i]) ? 0xFFFFFF : 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Тестовое изображение: плавный фон с неравномерной подсветкой, тёмные штрихи и шум,
+     * чтобы локальные пороги действительно зависели от окна.
+     */
+    private static BufferedImage image(int type, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        boolean[] stroke = new boolean[WIDTH * HEIGHT];
+        for (int i = 0; i < 120; i++) {
+            int x0 = random.nextInt(WIDTH), y0 = random.nextInt(HEIGHT);
+            boolean horizontal = random.nextBoolean();
+            int length = 5 + random.nextInt(30), thickness = 1 + random.nextInt(3);
+            for (int t = 0; t < length; t++) {
+                for (int s = 0; s < thickness; s++) {
+                    int x = horizontal ? x0 + t : x0 + s;
+                    int y = horizontal ? y0 + s : y0 + t;
+                    if (x < WIDTH && y < HEIGHT) {
+                        stroke[y * WIDTH + x] = true;
+                    }
+                }
+            }
+        }
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double light = 90 + 120.0 * x / WIDTH + 40 * Math.sin(y / 37.0);
+                int pixel = 0;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    double v = (stroke[y * WIDTH + x] ? light * 0.35 : light) + random.nextGaussian() * 12
+                            + shift / 2.0;
+                    // Отдельные выбросы "соль и перец" - для медианы
+                    if (random.nextInt(200) == 0) {
+                        v = random.nextBoolean() ? 0 : 255;
+                    }
+                    pixel |= Math.clamp(Math.round(v), 0, 255) << shift;
+                }
+                image.setRGB(x, y, pixel);
+            }
+        }
+        return image;
+    }
+
+    private static int[] rgbOf(BufferedImage image) {
+        int[] rgb = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] &= 0xFFFFFF;
+        }
+        return rgb;
+    }
+
+    private static String typeName(BufferedImage image) {
+        return switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB -> "INT_RGB";
+            case BufferedImage.TYPE_3BYTE_BGR -> "3BYTE_BGR";
+            case BufferedImage.TYPE_BYTE_GRAY -> "BYTE_GRAY";
+            default -> "тип " + image.getType();
+        };
+    }
+
+    private static String executorName(ParallelExecutor executor) {
+        return executor.getParallelism() + " потока" + (executor == MONITORED ? " под наблюдателем" : "");
+    }
+}
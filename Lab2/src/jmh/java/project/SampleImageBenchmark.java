@@ -0,0 +1,68 @@
+package project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтры на изображениях из photo_examples (пути относительно каталога модуля Lab2).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleImageBenchmark {
+
+    @Param({
+            "photo_examples/blur/blur1.png",
+            "photo_examples/treshold/Niblack_BETTER1.jpg",
+            "photo_examples/treshold/Sauvola_BETTER.png"
+    })
+    public String file;
+
+    @Param({"15", "31"})
+    public int window;
+
+    private BufferedImage image;
+    private ParallelExecutor executor;
+
+    @Setup
+    public void setUp() throws IOException {
+        image = ImageIO.read(new File(file));
+        if (image == null) {
+            throw new IOException("Не удалось прочитать " + file);
+        }
+        executor = ParallelExecutor.sequential();
+    }
+
+    @Benchmark
+    public BufferedImage boxBlur() {
+        return ImageFilters.applyBoxBlur(image, window / 2, executor);
+    }
+
+    @Benchmark
+    public BufferedImage niblack() {
+        return ImageFilters.applyNiblack(image, window, -0.2, executor);
+    }
+
+    @Benchmark
+    public BufferedImage sauvola() {
+        return ImageFilters.applySauvola(image, window, 0.2, executor);
+    }
+}
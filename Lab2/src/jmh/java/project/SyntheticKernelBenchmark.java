@@ -0,0 +1,88 @@
+package project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтры на синтетическом "скане документа" заданного размера и типа.
+ * Однопоточно, чтобы мерить сами алгоритмы, а не масштабирование.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntheticKernelBenchmark {
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"5", "15", "31"})
+    public int window;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "BYTE_GRAY"})
+    public String imageType;
+
+    private BufferedImage image;
+    private ParallelExecutor executor;
+
+    @Setup
+    public void setUp() {
+        image = documentScan(size, size, switch (imageType) {
+            case "INT_RGB" -> BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+            case "BYTE_GRAY" -> BufferedImage.TYPE_BYTE_GRAY;
+            default -> throw new IllegalArgumentException(imageType);
+        });
+        executor = ParallelExecutor.sequential();
+    }
+
+    @Benchmark
+    public BufferedImage boxBlur() {
+        return ImageFilters.applyBoxBlur(image, window / 2, executor);
+    }
+
+    @Benchmark
+    public BufferedImage niblack() {
+        return ImageFilters.applyNiblack(image, window, -0.2, executor);
+    }
+
+    @Benchmark
+    public BufferedImage sauvola() {
+        return ImageFilters.applySauvola(image, window, 0.2, executor);
+    }
+
+    /**
+     * Неравномерно освещённый светлый фон с тёмными "строками текста" и шумом.
+     * Генератор с фиксированным зерном: изображение одинаково от запуска к запуску.
+     */
+    static BufferedImage documentScan(int width, int height, int type) {
+        Random random = new Random(42);
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            boolean textLine = (y / 12) % 3 == 1;
+            for (int x = 0; x < width; x++) {
+                int background = 170 + 60 * x / width - 30 * y / height;
+                boolean ink = textLine && ((x / 7) % 5 != 0) && random.nextInt(4) != 0;
+                int v = (ink ? 40 : background) + random.nextInt(21) - 10;
+                v = Math.max(0, Math.min(255, v));
+                rgb[y * width + x] = 0xFF000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        return ImagePixels.writeRgb(rgb, width, height, type);
+    }
+}
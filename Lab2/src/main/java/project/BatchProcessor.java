@@ -0,0 +1,164 @@
+package project;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная обработка каталога изображений без GUI.
+ * <p>
+ * Чтение и запись файлов идут в виртуальных потоках (по одному на файл),
+ * а сама цепочка фильтров ({@link Pipeline}, слитно за один проход) - в ограниченном пуле потоков по числу ядер. Так декодирование,
+ * обработка и кодирование разных файлов перекрываются. Число изображений
+ * в памяти одновременно ограничено, чтобы чтение не убегало вперёд обработки.
+ * <p>
+ * Пример:
+ * <pre>
+ * java project.BatchProcessor --in scans --out result --chain blur:5,sauvola:15:0.2 --threads 8
+ * </pre>
+ */
+public final class BatchProcessor {
+
+    private static final String USAGE = """
+            Использование: --in <каталог> --out <каталог> --chain <фильтры> [--threads N] [--format png]
+              фильтры через запятую: %s
+              пример: --chain blur:5,sauvola:15:0.2""".formatted(Pipeline.FILTERS);
+
+    private final Pipeline pipeline;
+    private final int threads;
+    private final String format;
+
+    public BatchProcessor(Pipeline pipeline, int threads, String format) {
+        this.pipeline = pipeline;
+        this.threads = threads;
+        this.format = format;
+    }
+
+    /**
+     * Итог пакетной обработки.
+     */
+    public record Report(int processed, int failed, long pixels, long elapsedNanos) {
+        public double imagesPerSecond() {
+            return processed / (elapsedNanos / 1e9);
+        }
+
+        public double megapixelsPerSecond() {
+            return pixels / 1e6 / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Обработано: %d, ошибок: %d, время: %.2f с, %.2f изобр/с, %.1f Мп/с",
+                    processed, failed, elapsedNanos / 1e9, imagesPerSecond(), megapixelsPerSecond());
+        }
+    }
+
+    /**
+     * Обрабатывает все изображения из inputDir и пишет результаты в outputDir.
+     */
+    public Report run(Path inputDir, Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(inputDir)) {
+            files = list.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        ExecutorService cpuPool = Executors.newFixedThreadPool(threads);
+        // Не больше двух изображений на поток обработки в памяти: одно обрабатывается, одно ждёт
+        Semaphore inFlight = new Semaphore(threads * 2);
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong pixels = new AtomicLong();
+
+        long start = System.nanoTime();
+        try (ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : files) {
+                io.execute(() -> {
+                    try {
+                        inFlight.acquire();
+                        try {
+                            BufferedImage image = ImageIO.read(file.toFile());
+                            if (image == null) {
+                                // Ни один декодер не подошёл: файл считается ошибкой, а не молча пропускается
+                                throw new IOException("неизвестный формат изображения");
+                            }
+                            // Параллелизм здесь - между изображениями, поэтому цепочка однопоточная
+                            BufferedImage result = cpuPool.submit(
+                                    () -> pipeline.apply(image, ParallelExecutor.sequential())).get();
+                            Path out = outputDir.resolve(baseName(file) + "." + format);
+                            if (!ImageIO.write(result, format, out.toFile())) {
+                                throw new IOException("Нет кодека для формата " + format);
+                            }
+                            pixels.addAndGet((long) image.getWidth() * image.getHeight());
+                            processed.incrementAndGet();
+                        } finally {
+                            inFlight.release();
+                        }
+                    } catch (Throwable e) {
+                        // Любой сбой, в том числе OutOfMemoryError на огромном скане и прерывание,
+                        // засчитывается файлу как ошибка и не теряется в Future виртуального потока
+                        if (e instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                        }
+                        failed.incrementAndGet();
+                        System.err.println("Ошибка обработки " + file + ": "
+                                + Objects.requireNonNullElse(e.getMessage(), e.toString()));
+                    }
+                });
+            }
+        } finally {
+            cpuPool.shutdown();
+        }
+        return new Report(processed.get(), failed.get(), pixels.get(), System.nanoTime() - start);
+    }
+
+    static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String in = null, out = null, chain = null, format = "png";
+        int threads = Runtime.getRuntime().availableProcessors();
+        Pipeline pipeline = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--in" -> in = args[++i];
+                    case "--out" -> out = args[++i];
+                    case "--chain" -> chain = args[++i];
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--format" -> format = args[++i];
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+                }
+            }
+            if (in == null || out == null || chain == null) {
+                throw new IllegalArgumentException("Нужны параметры --in, --out и --chain");
+            }
+            pipeline = Pipeline.parse(chain);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        BatchProcessor processor = new BatchProcessor(pipeline, threads, format);
+        Report report = processor.run(new File(in).toPath(), new File(out).toPath());
+        System.out.println(report);
+        System.out.println("Ядра фильтров: " + RowKernels.get());
+        FilterMetrics.snapshot().values().forEach(System.out::println);
+    }
+}
@@ -0,0 +1,48 @@
+package project;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR на каждый вызов фильтра (см. {@link FilterMetrics}).
+ * Длительность события - время работы фильтра.
+ */
+@Name("project.FilterInvocation")
+@Label("Filter Invocation")
+@Category("Image Processing")
+@Description("One invocation of an image filter")
+@StackTrace(false)
+final class FilterEvent extends Event {
+
+    @Label("Filter")
+    String filter;
+
+    @Label("Parameters")
+    String params;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Megapixels per Second")
+    double megapixelsPerSecond;
+
+    @Label("Bytes Allocated")
+    @Description("Heap allocated by all threads during the call")
+    @DataAmount
+    long bytesAllocated;
+
+    @Label("Completed")
+    @Description("False if the filter was cancelled or failed")
+    boolean completed;
+}
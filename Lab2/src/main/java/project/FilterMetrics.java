@@ -0,0 +1,199 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Замеры вызовов фильтров: время, мегапиксели в секунду, выделенная память и число потоков.
+ * <p>
+ * Каждый вызов фильтра через {@link #run} даёт:
+ * <ul>
+ *   <li>событие JFR {@code project.FilterInvocation} ({@link FilterEvent}) - видно в записях
+ *   {@code -XX:StartFlightRecording} и в {@code jfr print --events project.FilterInvocation};</li>
+ *   <li>накопленную статистику по имени фильтра ({@link #snapshot()});</li>
+ *   <li>вызов подписчиков ({@link #addListener}) - например, строки состояния окна.</li>
+ * </ul>
+ * Выделенная память считается по всем потокам JVM (com.sun.management.ThreadMXBean),
+ * так что учитываются и рабочие потоки пула; параллельная работа других потоков
+ * тоже попадает в замер. Если JVM не умеет считать выделения, значение -1.
+ */
+public final class FilterMetrics {
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    private static final Map<String, Stats> STATS = new TreeMap<>();
+    private static final List<Consumer<Sample>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private FilterMetrics() {
+    }
+
+    /**
+     * Один вызов фильтра.
+     *
+     * @param completed false, если фильтр отменён или упал
+     */
+    public record Sample(String filter, String params, int width, int height, int threads,
+                         long nanos, long bytesAllocated, boolean completed) {
+        public double megapixels() {
+            return (double) width * height / 1e6;
+        }
+
+        public double megapixelsPerSecond() {
+            return megapixels() / Math.max(1e-9, nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s%s: %d мс, %.1f МП/с, выделено %s, потоков: %d%s",
+                    filter, params.isEmpty() ? "" : " (" + params + ")", nanos / 1_000_000,
+                    megapixelsPerSecond(), formatBytes(bytesAllocated), threads, completed ? "" : ", прервано");
+        }
+    }
+
+    /**
+     * Накопленная статистика фильтра по завершённым вызовам.
+     */
+    public record Stats(String filter, long count, long totalNanos, long minNanos, long maxNanos,
+                        double totalMegapixels, long totalBytesAllocated, Sample last) {
+        public double meanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        public double megapixelsPerSecond() {
+            return totalMegapixels / Math.max(1e-9, totalNanos / 1e9);
+        }
+
+        Stats add(Sample sample) {
+            return new Stats(filter, count + 1, totalNanos + sample.nanos(),
+                    Math.min(minNanos, sample.nanos()), Math.max(maxNanos, sample.nanos()),
+                    totalMegapixels + sample.megapixels(),
+                    totalBytesAllocated + Math.max(0, sample.bytesAllocated()), sample);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: вызовов %d, среднее %.1f мс (%d..%d), %.1f МП/с, выделено %s",
+                    filter, count, meanMillis(), minNanos / 1_000_000, maxNanos / 1_000_000,
+                    megapixelsPerSecond(), formatBytes(totalBytesAllocated));
+        }
+    }
+
+    /**
+     * Выполняет тело фильтра с замером. Исключения тела пробрасываются, вызов
+     * при этом записывается как незавершённый.
+     *
+     * @param filter имя фильтра, по нему копится статистика
+     * @param params параметры для событий и строки состояния, например "radius=5"
+     */
+    public static void run(String filter, String params, BufferedImage image, ParallelExecutor executor,
+                           Runnable body) {
+        run(filter, params, image.getWidth(), image.getHeight(), executor, body);
+    }
+
+    /**
+     * То же для изображения width x height, не представленного BufferedImage.
+     */
+    public static void run(String filter, String params, int width, int height, ParallelExecutor executor,
+                           Runnable body) {
+        FilterEvent event = new FilterEvent();
+        event.begin();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            body.run();
+            completed = true;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+            Sample sample = new Sample(filter, params, width, height, executor.getParallelism(), nanos,
+                    allocated, completed);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.filter = filter;
+                event.params = params;
+                event.width = sample.width();
+                event.height = sample.height();
+                event.threads = sample.threads();
+                event.megapixelsPerSecond = sample.megapixelsPerSecond();
+                event.bytesAllocated = allocated;
+                event.completed = completed;
+                event.commit();
+            }
+            record(sample);
+        }
+    }
+
+    private static void record(Sample sample) {
+        if (sample.completed()) {
+            synchronized (STATS) {
+                STATS.merge(sample.filter(),
+                        new Stats(sample.filter(), 0, 0, Long.MAX_VALUE, 0, 0, 0, null).add(sample),
+                        (old, ignored) -> old.add(sample));
+            }
+        }
+        for (Consumer<Sample> listener : LISTENERS) {
+            listener.accept(sample);
+        }
+    }
+
+    /**
+     * Копия статистики по всем фильтрам на текущий момент, по имени фильтра.
+     */
+    public static Map<String, Stats> snapshot() {
+        synchronized (STATS) {
+            return Collections.unmodifiableMap(new TreeMap<>(STATS));
+        }
+    }
+
+    public static void reset() {
+        synchronized (STATS) {
+            STATS.clear();
+        }
+    }
+
+    /**
+     * Подписчик вызывается после каждого вызова фильтра в потоке, выполнявшем фильтр.
+     */
+    public static void addListener(Consumer<Sample> listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Consumer<Sample> listener) {
+        LISTENERS.remove(listener);
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getTotalThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            if (!bean.isThreadAllocatedMemoryEnabled()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return bean;
+        }
+        return null;
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "н/д";
+        }
+        if (bytes < 1 << 20) {
+            return String.format(Locale.ROOT, "%.1f КБ", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f МБ", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,90 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Плоскость яркостей изображения (байт на пиксель), вычисленная один раз.
+ * <p>
+ * {@link #of} кэширует плоскость за изображением, поэтому повторная пороговая
+ * обработка того же изображения с другими окном и k не пересчитывает яркости.
+ * Кэш слабый: запись исчезает вместе с изображением. Изображения в программе
+ * после создания не изменяются; если изображение всё же изменено, вызовите {@link #invalidate}.
+ */
+public final class GrayPlane {
+
+    private static final Map<BufferedImage, GrayPlane> CACHE =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+
+    public GrayPlane(byte[] data, int width, int height) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Плоскость яркостей изображения: из кэша или вычисленная параллельно по полосам строк.
+     */
+    public static GrayPlane of(BufferedImage image, ParallelExecutor executor) {
+        GrayPlane cached = CACHE.get(image);
+        if (cached != null) {
+            return cached;
+        }
+        GrayPlane plane = compute(image, executor);
+        CACHE.put(image, plane);
+        return plane;
+    }
+
+    /**
+     * Есть ли плоскость изображения в кэше, то есть обойдётся ли {@link #of} без прохода по изображению.
+     */
+    public static boolean isCached(BufferedImage image) {
+        return CACHE.containsKey(image);
+    }
+
+    /**
+     * Вычисляет плоскость яркостей без кэша.
+     */
+    public static GrayPlane compute(BufferedImage image, ParallelExecutor executor) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] data = new byte[width * height];
+        executor.forEachBand(0, height, (y0, y1) -> ImagePixels.readGray(image, data, y0, y1));
+        return new GrayPlane(data, width, height);
+    }
+
+    /**
+     * Убирает плоскость изображения из кэша.
+     */
+    public static void invalidate(BufferedImage image) {
+        CACHE.remove(image);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Яркость пикселя с индексом y * width + x, 0..255.
+     */
+    public int get(int index) {
+        return data[index] & 0xFF;
+    }
+
+    /**
+     * Байты яркостей построчно. Массив общий для всех пользователей плоскости: не изменять.
+     */
+    public byte[] data() {
+        return data;
+    }
+}
@@ -0,0 +1,423 @@
+package project;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Служба "горячей папки": непрерывно обрабатывает файлы, появляющиеся в каталоге.
+ * <p>
+ * Поток наблюдения получает события {@link WatchService} и ждёт, пока размер и время
+ * изменения файла не перестанут меняться (сканер мог ещё не дописать файл), после чего
+ * ставит файл в ограниченную очередь. Рабочие потоки берут файлы из очереди, выполняют
+ * цепочку {@link Pipeline} и пишут результат атомарно: во временный файл рядом с результатом
+ * и затем переименованием. Обработанный исходный файл переносится в подкаталог done,
+ * необработанный - в failed; файлы, оставшиеся в очереди при остановке, остаются
+ * на месте и обрабатываются при следующем запуске.
+ * <p>
+ * Память ограничена при любом потоке файлов: изображений в памяти не больше, чем рабочих
+ * потоков, в очереди - только пути. Если очередь полна, поток наблюдения ждёт (обратное
+ * давление), а события тем временем копятся в самом WatchService; при его переполнении
+ * (OVERFLOW) и при слишком большом числе ожидающих готовности файлов каталог позже
+ * просматривается заново.
+ * <p>
+ * Пример:
+ * <pre>
+ * java project.HotFolder --watch scans --out result --chain blur:2,sauvola:15:0.2 --threads 4 --queue 64
+ * </pre>
+ */
+public final class HotFolder implements AutoCloseable {
+
+    private static final String USAGE = """
+            Использование: --watch <каталог> --out <каталог> --chain <фильтры>
+                           [--threads N] [--queue N] [--format png] [--settle мс] [--report с]
+              фильтры через запятую: %s
+              обработанные файлы переносятся в <каталог>/done, ошибочные - в <каталог>/failed""".formatted(Pipeline.FILTERS);
+
+    public static final String DONE_DIR = "done";
+    public static final String FAILED_DIR = "failed";
+
+    // Период опроса событий и проверки готовности файлов
+    private static final long POLL_MILLIS = 200;
+    // Вес новой задержки в скользящем среднем
+    private static final double LATENCY_WEIGHT = 0.1;
+
+    private final Pipeline pipeline;
+    private final Path inputDir;
+    private final Path outputDir;
+    private final int threads;
+    private final String format;
+    private final long settleNanos;
+
+    private final BlockingQueue<Job> queue;
+    // Ожидающих готовности файлов не больше maxPending, остальные найдёт повторный просмотр каталога
+    private final int maxPending;
+    // Только для потока наблюдения: файлы, ожидающие готовности, в порядке обнаружения
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    private boolean rescanNeeded = true;
+    // Файлы в очереди или в работе: их повторные события не учитываются
+    private final Set<Path> claimed = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    // Задержка от обнаружения файла до записи результата, под блокировкой latencyLock
+    private final Object latencyLock = new Object();
+    private long latencyCount;
+    private double recentLatencyNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * @param queueCapacity сколько файлов может ждать обработки в очереди
+     * @param settleMillis  сколько файл должен не меняться, чтобы считаться записанным
+     */
+    public HotFolder(Pipeline pipeline, Path inputDir, Path outputDir, int threads, int queueCapacity,
+                     String format, long settleMillis) {
+        if (inputDir.toAbsolutePath().normalize().equals(outputDir.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("Каталог результатов совпадает с наблюдаемым: " + inputDir);
+        }
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Нужен хотя бы один поток и место в очереди");
+        }
+        this.pipeline = pipeline;
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.threads = threads;
+        this.format = format;
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxPending = Math.max(1024, 8 * queueCapacity);
+    }
+
+    /**
+     * Файл в очереди; discoveredNanos - когда он был обнаружен.
+     */
+    private record Job(Path file, long discoveredNanos) {
+    }
+
+    private static final class Pending {
+        final long discoveredNanos;
+        long size = -1;
+        FileTime modified;
+        long changedNanos;
+
+        Pending(long discoveredNanos) {
+            this.discoveredNanos = discoveredNanos;
+            this.changedNanos = discoveredNanos;
+        }
+    }
+
+    /**
+     * Состояние службы.
+     *
+     * @param queued             файлов в очереди
+     * @param pending            файлов, ожидающих готовности (ещё не в очереди)
+     * @param active             файлов в обработке
+     * @param recentLatencyMillis скользящее среднее задержки от обнаружения до результата
+     * @param maxLatencyMillis   наибольшая задержка с запуска
+     */
+    public record Status(int queued, int capacity, int pending, int active, long processed, long failed,
+                         double recentLatencyMillis, long maxLatencyMillis) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "Очередь: %d/%d, ждут готовности: %d, в работе: %d, обработано: %d, ошибок: %d, "
+                            + "задержка: %.0f мс (макс. %d мс)",
+                    queued, capacity, pending, active, processed, failed, recentLatencyMillis, maxLatencyMillis);
+        }
+    }
+
+    public Status status() {
+        synchronized (latencyLock) {
+            return new Status(queue.size(), queue.size() + queue.remainingCapacity(), pendingCount.get(),
+                    active.get(), processed.get(), failed.get(),
+                    recentLatencyNanos / 1e6, maxLatencyNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * Наблюдает за каталогом до вызова {@link #close()}. Файлы, уже лежащие в каталоге,
+     * тоже обрабатываются.
+     */
+    public void run() throws IOException, InterruptedException {
+        running = true;
+        List<Thread> workers = new ArrayList<>(threads);
+        try (WatchService watcher = inputDir.getFileSystem().newWatchService()) {
+            Files.createDirectories(outputDir);
+            Files.createDirectories(inputDir.resolve(DONE_DIR));
+            Files.createDirectories(inputDir.resolve(FAILED_DIR));
+            inputDir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(this::work, "hotfolder-worker-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+            while (running) {
+                // Пока ожидающих много, каталог не просматривается: они сначала должны уйти в очередь
+                if (rescanNeeded && pending.size() < maxPending / 2) {
+                    rescan();
+                }
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            rescanNeeded = true;
+                        } else {
+                            discover(inputDir.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        throw new IOException("Каталог больше недоступен: " + inputDir);
+                    }
+                }
+                dispatchSettled();
+            }
+        } finally {
+            running = false;
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Останавливает службу: новые файлы не берутся, текущие дорабатываются.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        stopped.await();
+    }
+
+    private void rescan() throws IOException {
+        rescanNeeded = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inputDir)) {
+            for (Path file : files) {
+                discover(file);
+                if (rescanNeeded) {
+                    return; // Ожидающих слишком много, продолжим позже
+                }
+            }
+        }
+    }
+
+    private void discover(Path file) {
+        if (claimed.contains(file) || pending.containsKey(file) || !accepts(file)) {
+            return;
+        }
+        if (pending.size() >= maxPending) {
+            rescanNeeded = true;
+            return;
+        }
+        pending.put(file, new Pending(System.nanoTime()));
+        pendingCount.set(pending.size());
+    }
+
+    // Подкаталоги, скрытые и временные файлы не обрабатываются
+    private static boolean accepts(Path file) {
+        String name = file.getFileName().toString();
+        return !name.startsWith(".") && !name.endsWith(".tmp") && !name.endsWith(".part")
+                && Files.isRegularFile(file);
+    }
+
+    /**
+     * Ставит в очередь файлы, которые не менялись settleNanos. Если очередь полна - ждёт.
+     */
+    private void dispatchSettled() throws IOException, InterruptedException {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext() && running; ) {
+            Map.Entry<Path, Pending> entry = it.next();
+            Pending state = entry.getValue();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                it.remove();
+                continue;
+            }
+            if (attributes.size() != state.size || !attributes.lastModifiedTime().equals(state.modified)) {
+                state.size = attributes.size();
+                state.modified = attributes.lastModifiedTime();
+                state.changedNanos = now;
+            } else if (now - state.changedNanos >= settleNanos) {
+                Job job = new Job(entry.getKey(), state.discoveredNanos);
+                claimed.add(job.file());
+                while (!queue.offer(job, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (!running) {
+                        claimed.remove(job.file());
+                        return;
+                    }
+                }
+                it.remove();
+            }
+        }
+        pendingCount.set(pending.size());
+    }
+
+    private void work() {
+        try {
+            while (running) {
+                Job job = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    continue;
+                }
+                active.incrementAndGet();
+                try {
+                    process(job);
+                } finally {
+                    active.decrementAndGet();
+                    claimed.remove(job.file());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(Job job) {
+        Path file = job.file();
+        try {
+            BufferedImage image = ImageIO.read(file.toFile());
+            if (image == null) {
+                throw new IOException("не изображение");
+            }
+            // Параллелизм здесь - между файлами, поэтому цепочка однопоточная
+            BufferedImage result = pipeline.apply(image, ParallelExecutor.sequential());
+            writeAtomically(result, outputDir.resolve(BatchProcessor.baseName(file) + "." + format));
+            Files.move(file, inputDir.resolve(DONE_DIR).resolve(file.getFileName()),
+                    StandardCopyOption.REPLACE_EXISTING);
+            processed.incrementAndGet();
+            recordLatency(System.nanoTime() - job.discoveredNanos());
+        } catch (Throwable e) {
+            // Любая ошибка, в том числе OutOfMemoryError на огромном файле, касается только
+            // этого файла: он уходит в failed, а рабочий поток берёт следующий
+            failed.incrementAndGet();
+            System.err.println("Ошибка обработки " + file + ": "
+                    + Objects.requireNonNullElse(e.getMessage(), e.toString()));
+            try {
+                Files.move(file, inputDir.resolve(FAILED_DIR).resolve(file.getFileName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveError) {
+                System.err.println("Не удалось перенести " + file + ": " + moveError.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Пишет изображение во временный файл того же каталога и переименовывает его в target,
+     * так что читатели каталога результатов никогда не видят недописанный файл.
+     */
+    private void writeAtomically(BufferedImage image, Path target) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            if (!ImageIO.write(image, format, temp.toFile())) {
+                throw new IOException("Нет кодека для формата " + format);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencyLock) {
+            recentLatencyNanos = latencyCount++ == 0 ? nanos
+                    : recentLatencyNanos + LATENCY_WEIGHT * (nanos - recentLatencyNanos);
+            maxLatencyNanos = Math.max(maxLatencyNanos, nanos);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String in = null, out = null, chain = null, format = "png";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int capacity = 64;
+        long settle = 1000;
+        int report = 10;
+        HotFolder folder = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--watch" -> in = args[++i];
+                    case "--out" -> out = args[++i];
+                    case "--chain" -> chain = args[++i];
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--queue" -> capacity = Integer.parseInt(args[++i]);
+                    case "--format" -> format = args[++i];
+                    case "--settle" -> settle = Long.parseLong(args[++i]);
+                    case "--report" -> report = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+                }
+            }
+            if (in == null || out == null || chain == null) {
+                throw new IllegalArgumentException("Нужны параметры --watch, --out и --chain");
+            }
+            folder = new HotFolder(Pipeline.parse(chain), Path.of(in), Path.of(out), threads, capacity, format, settle);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        HotFolder service = folder;
+        // Ctrl+C: дорабатываем текущие файлы, остальные останутся в каталоге до следующего запуска
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                service.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hotfolder-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (report > 0) {
+            reporter.scheduleAtFixedRate(() -> System.out.println(service.status()), report, report, TimeUnit.SECONDS);
+        }
+        System.out.println("Наблюдение за " + in + ", потоков: " + threads + ", очередь: " + capacity);
+        try {
+            service.run();
+        } finally {
+            reporter.shutdown();
+            System.out.println(service.status());
+        }
+    }
+}
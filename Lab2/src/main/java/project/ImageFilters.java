@@ -0,0 +1,372 @@
+package project;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Алгоритмы обработки изображений: сглаживание и локальная пороговая обработка.
+ * Все фильтры выполняются через {@link ParallelExecutor} по полосам строк;
+ * пиксели ближе половины окна к краю изображения остаются нулевыми
+ * (кроме гауссова сглаживания, которое продолжает края изображения).
+ * <p>
+ * Варианты с параметром dst пишут результат прямо в готовое изображение
+ * (см. {@link #blurTarget}, {@link #binaryTarget}) по мере готовности полос,
+ * поэтому его можно показывать, пока фильтр ещё работает.
+ * Каждый вызов замеряется через {@link FilterMetrics}.
+ */
+public final class ImageFilters {
+
+    private ImageFilters() {
+    }
+
+    /**
+     * Изображение-приёмник для сглаживания: того же типа, что и исходное.
+     */
+    public static BufferedImage blurTarget(BufferedImage src) {
+        return ImagePixels.createImage(src.getWidth(), src.getHeight(), src.getType());
+    }
+
+    /**
+     * Изображение-приёмник для пороговой обработки.
+     */
+    public static BufferedImage binaryTarget(BufferedImage src) {
+        return new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+    }
+
+    /**
+     * 1. Низкочастотный фильтр (Box Blur - усреднение)
+     */
+    public static BufferedImage applyBoxBlur(BufferedImage src, int radius, ParallelExecutor executor) {
+        BufferedImage dst = blurTarget(src);
+        applyBoxBlur(src, dst, radius, executor);
+        return dst;
+    }
+
+    public static void applyBoxBlur(BufferedImage src, BufferedImage dst, int radius, ParallelExecutor executor) {
+        FilterMetrics.run("blur", "radius=" + radius, src, executor, () -> {
+            int width = src.getWidth();
+            int height = src.getHeight();
+            if (width < radius * 2 + 1 || height < radius * 2 + 1) {
+                return;
+            }
+            int[] pixels = ImagePixels.readRgb(src);
+            int[] result = new int[width * height];
+            executor.forEachBand(radius, height - radius, (y0, y1) -> {
+                boxBlurBand(pixels, result, width, radius, y0, y1);
+                ImagePixels.writeRgbRows(dst, y0, y1, result, y0 * width);
+            });
+        });
+    }
+
+    /**
+     * Сепарабельная реализация со скользящими суммами: стоимость на пиксель
+     * не зависит от радиуса. Для каждого столбца поддерживается сумма по
+     * вертикальному окну строк, а по строке эти суммы сдвигаются окном по горизонтали.
+     * Каждая полоса заново набирает суммы по своим верхним radius строкам-перекрытиям.
+     */
+    public static int[] boxBlur(int[] pixels, int width, int height, int radius, ParallelExecutor executor) {
+        int[] result = new int[width * height];
+
+        int windowSize = radius * 2 + 1;
+        if (width < windowSize || height < windowSize) {
+            return result;
+        }
+
+        executor.forEachBand(radius, height - radius,
+                (y0, y1) -> boxBlurBand(pixels, result, width, radius, y0, y1));
+        return result;
+    }
+
+    private static void boxBlurBand(int[] pixels, int[] result, int width, int radius, int y0, int y1) {
+        int windowSize = radius * 2 + 1;
+        int area = windowSize * windowSize;
+
+        // Суммы каналов по вертикальному окну для каждого столбца
+        int[] rCol = new int[width];
+        int[] gCol = new int[width];
+        int[] bCol = new int[width];
+
+        // Начальное окно: строки y0 - radius .. y0 + radius - 1, последняя добавляется в цикле
+        for (int y = y0 - radius; y < y0 + radius; y++) {
+            addRow(pixels, y * width, width, rCol, gCol, bCol, 1);
+        }
+
+        for (int y = y0; y < y1; y++) {
+            // Входящая строка снизу
+            addRow(pixels, (y + radius) * width, width, rCol, gCol, bCol, 1);
+
+            // Проход окном по строке
+            int rSum = 0, gSum = 0, bSum = 0;
+            for (int x = 0; x < windowSize - 1; x++) {
+                rSum += rCol[x];
+                gSum += gCol[x];
+                bSum += bCol[x];
+            }
+            int row = y * width;
+            for (int x = radius; x < width - radius; x++) {
+                int in = x + radius;
+                rSum += rCol[in];
+                gSum += gCol[in];
+                bSum += bCol[in];
+
+                int r = rSum / area;
+                int g = gSum / area;
+                int b = bSum / area;
+                result[row + x] = (0xFF << 24) | (r << 16) | (g << 8) | b;
+
+                int out = x - radius;
+                rSum -= rCol[out];
+                gSum -= gCol[out];
+                bSum -= bCol[out];
+            }
+
+            // Уходящая строка сверху
+            addRow(pixels, (y - radius) * width, width, rCol, gCol, bCol, -1);
+        }
+    }
+
+    /**
+     * Вспомогательный метод: прибавляет (sign = 1) или вычитает (sign = -1)
+     * каналы строки пикселей к суммам по столбцам
+     */
+    private static void addRow(int[] pixels, int offset, int width, int[] rCol, int[] gCol, int[] bCol, int sign) {
+        RowKernels.get().addChannels(pixels, offset, rCol, gCol, bCol, 0, width, sign);
+    }
+
+    /**
+     * 2. Локальная пороговая обработка: Метод Ниблэка
+     * T = mean + k * stdDev
+     */
+    public static BufferedImage applyNiblack(BufferedImage src, int windowSize, double k, ParallelExecutor executor) {
+        BufferedImage dst = binaryTarget(src);
+        applyNiblack(src, dst, windowSize, k, executor);
+        return dst;
+    }
+
+    public static void applyNiblack(BufferedImage src, BufferedImage dst, int windowSize, double k,
+                                    ParallelExecutor executor) {
+        FilterMetrics.run("niblack", "window=" + windowSize + ", k=" + k, src, executor,
+                () -> LocalThreshold.apply(src, dst, windowSize, LocalThreshold.niblack(k), executor));
+    }
+
+    /**
+     * 3. Локальная пороговая обработка: Метод Сауволы
+     * T = mean * (1 + k * (stdDev / R - 1))
+     */
+    public static BufferedImage applySauvola(BufferedImage src, int windowSize, double k, ParallelExecutor executor) {
+        BufferedImage dst = binaryTarget(src);
+        applySauvola(src, dst, windowSize, k, executor);
+        return dst;
+    }
+
+    public static void applySauvola(BufferedImage src, BufferedImage dst, int windowSize, double k,
+                                    ParallelExecutor executor) {
+        FilterMetrics.run("sauvola", "window=" + windowSize + ", k=" + k, src, executor,
+                () -> LocalThreshold.apply(src, dst, windowSize, LocalThreshold.sauvola(k), executor));
+    }
+
+    /**
+     * 4. Гауссово сглаживание с параметром sigma.
+     * Приближается тремя последовательными расширенными Box Blur (см. {@link ExtendedBox}),
+     * каждый - скользящей суммой, поэтому время не зависит от sigma.
+     * За краем изображения повторяются крайние пиксели, так что результат определён везде.
+     */
+    public static BufferedImage applyGaussianBlur(BufferedImage src, double sigma, ParallelExecutor executor) {
+        BufferedImage dst = blurTarget(src);
+        applyGaussianBlur(src, dst, sigma, executor);
+        return dst;
+    }
+
+    public static void applyGaussianBlur(BufferedImage src, BufferedImage dst, double sigma,
+                                         ParallelExecutor executor) {
+        FilterMetrics.run("gauss", "sigma=" + sigma, src, executor, () -> {
+            int width = src.getWidth();
+            int height = src.getHeight();
+            int[] result = new int[width * height];
+            gaussianBlur(ImagePixels.readRgb(src), result, width, height, sigma, executor,
+                    (y0, y1) -> ImagePixels.writeRgbRows(dst, y0, y1, result, y0 * width));
+        });
+    }
+
+    public static int[] gaussianBlur(int[] pixels, int width, int height, double sigma, ParallelExecutor executor) {
+        int[] result = new int[width * height];
+        gaussianBlur(pixels, result, width, height, sigma, executor, (y0, y1) -> {
+        });
+        return result;
+    }
+
+    // Проходов расширенного Box Blur на каждую ось
+    private static final int GAUSSIAN_PASSES = 3;
+
+    /**
+     * Расширенный Box Blur (P. Gwosdek и др., "Theoretical foundations of Gaussian
+     * convolution by extended box filtering"): окно радиуса radius с весом 1 и ещё по
+     * одному отсчёту с каждой стороны с весом alpha из [0, 1). Дробный вес позволяет
+     * получить точную дисперсию sigma^2 / passes, а не ближайшую для целого окна.
+     */
+    record ExtendedBox(int radius, double alpha) {
+        static ExtendedBox of(double sigma, int passes) {
+            double variance = sigma * sigma / passes;
+            int r = (int) Math.floor(0.5 * Math.sqrt(12 * variance + 1) - 0.5);
+            double alpha = (2 * r + 1) * (3 * variance - r * (r + 1.0)) / (6 * ((r + 1.0) * (r + 1) - variance));
+            return new ExtendedBox(r, alpha);
+        }
+
+        float scale() {
+            return (float) (1.0 / (2 * radius + 1 + 2 * alpha));
+        }
+    }
+
+    /**
+     * Сначала по полосам столбцов выполняются вертикальные проходы каждого канала
+     * (в плоскостях float), затем по полосам строк - горизонтальные, и готовые строки
+     * упаковываются в result; после каждой полосы строк вызывается rowsDone.
+     */
+    private static void gaussianBlur(int[] pixels, int[] result, int width, int height, double sigma,
+                                     ParallelExecutor executor, ParallelExecutor.RowBand rowsDone) {
+        ExtendedBox box = ExtendedBox.of(sigma, GAUSSIAN_PASSES);
+        // Два прохода: полосы столбцов, затем полосы строк
+        ParallelExecutor passes = executor.withPasses(2);
+        int size = width * height;
+        float[][] planes = {new float[size], new float[size], new float[size]};
+        float[] tmp = new float[size];
+
+        // Полосы столбцов независимы: каждая пишет только свои столбцы плоскостей и tmp
+        passes.forEachBand(0, width, (x0, x1) -> {
+            float[] acc = new float[x1 - x0];
+            for (int c = 0; c < 3; c++) {
+                int shift = 16 - 8 * c;
+                float[] plane = planes[c];
+                for (int y = 0; y < height; y++) {
+                    int row = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        tmp[row + x] = (pixels[row + x] >> shift) & 0xFF;
+                    }
+                }
+                // Нечётное число проходов: tmp -> plane -> tmp -> plane
+                verticalBox(tmp, plane, width, height, box, x0, x1, acc);
+                verticalBox(plane, tmp, width, height, box, x0, x1, acc);
+                verticalBox(tmp, plane, width, height, box, x0, x1, acc);
+            }
+        });
+
+        passes.forEachBand(0, height, (y0, y1) -> {
+            float[] a = new float[width];
+            float[] b = new float[width];
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    result[row + x] = 0xFF << 24;
+                }
+                for (int c = 0; c < 3; c++) {
+                    System.arraycopy(planes[c], row, a, 0, width);
+                    horizontalBox(a, b, width, box);
+                    horizontalBox(b, a, width, box);
+                    horizontalBox(a, b, width, box);
+                    int shift = 16 - 8 * c;
+                    for (int x = 0; x < width; x++) {
+                        int v = Math.min(255, (int) (b[x] + 0.5f));
+                        result[row + x] |= v << shift;
+                    }
+                }
+            }
+            rowsDone.process(y0, y1);
+        });
+    }
+
+    /**
+     * Расширенный Box Blur строки скользящей суммой по окну радиуса r,
+     * крайние отсчёты r + 1 добавляются с весом alpha; края продолжаются.
+     */
+    private static void horizontalBox(float[] src, float[] dst, int width, ExtendedBox box) {
+        int r = box.radius();
+        float alpha = (float) box.alpha();
+        float scale = box.scale();
+        int last = width - 1;
+        float sum = (r + 1) * src[0];
+        for (int i = 1; i <= r; i++) {
+            sum += src[Math.min(i, last)];
+        }
+        // Индексы продолжаются за край только у краёв строки; в середине обходимся без Math.min/max
+        int head = Math.min(width, r + 1);
+        int tail = Math.max(head, width - r - 1);
+        for (int x = 0; x < head; x++) {
+            float in = src[Math.min(x + r + 1, last)];
+            dst[x] = (sum + alpha * (in + src[0])) * scale;
+            sum += in - src[0];
+        }
+        for (int x = head; x < tail; x++) {
+            float in = src[x + r + 1];
+            dst[x] = (sum + alpha * (in + src[x - r - 1])) * scale;
+            sum += in - src[x - r];
+        }
+        for (int x = tail; x < width; x++) {
+            float in = src[last];
+            dst[x] = (sum + alpha * (in + src[Math.max(x - r - 1, 0)])) * scale;
+            sum += in - src[Math.max(x - r, 0)];
+        }
+    }
+
+    /**
+     * То же для столбцов [x0, x1): суммы по окну строк каждого столбца
+     * сдвигаются вниз построчно.
+     */
+    private static void verticalBox(float[] src, float[] dst, int width, int height, ExtendedBox box,
+                                    int x0, int x1, float[] acc) {
+        int r = box.radius();
+        float alpha = (float) box.alpha();
+        float scale = box.scale();
+        int last = height - 1;
+        for (int x = x0; x < x1; x++) {
+            acc[x - x0] = (r + 1) * src[x];
+        }
+        for (int i = 1; i <= r; i++) {
+            int row = Math.min(i, last) * width;
+            for (int x = x0; x < x1; x++) {
+                acc[x - x0] += src[row + x];
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int in = Math.min(y + r + 1, last) * width;
+            int out = Math.max(y - r - 1, 0) * width;
+            int leaving = Math.max(y - r, 0) * width;
+            for (int x = x0; x < x1; x++) {
+                dst[row + x] = (acc[x - x0] + alpha * (src[in + x] + src[out + x])) * scale;
+                acc[x - x0] += src[in + x] - src[leaving + x];
+            }
+        }
+    }
+
+    /**
+     * 5. Медианный фильтр радиуса radius по каналам (см. {@link StreamingMedian}):
+     * убирает импульсный шум ("соль и перец") перед пороговой обработкой.
+     * Время на пиксель не зависит от радиуса.
+     */
+    public static BufferedImage applyMedian(BufferedImage src, int radius, ParallelExecutor executor) {
+        BufferedImage dst = blurTarget(src);
+        applyMedian(src, dst, radius, executor);
+        return dst;
+    }
+
+    public static void applyMedian(BufferedImage src, BufferedImage dst, int radius, ParallelExecutor executor) {
+        FilterMetrics.run("median", "radius=" + radius, src, executor,
+                () -> Pipeline.create().median(radius).run(src, dst, executor));
+    }
+
+    /**
+     * 6. Локальная пороговая обработка любым методом {@link LocalThreshold.Method}:
+     * Ниблэк, Саувола, Брэдли - Рот, Вольф - Жолион, Пхансалкар.
+     */
+    public static BufferedImage applyLocalThreshold(BufferedImage src, int windowSize, LocalThreshold.Method method,
+                                                    ParallelExecutor executor) {
+        BufferedImage dst = binaryTarget(src);
+        applyLocalThreshold(src, dst, windowSize, method, executor);
+        return dst;
+    }
+
+    public static void applyLocalThreshold(BufferedImage src, BufferedImage dst, int windowSize,
+                                           LocalThreshold.Method method, ParallelExecutor executor) {
+        FilterMetrics.run(method.name(), "window=" + windowSize + ", " + method, src, executor,
+                () -> LocalThreshold.apply(src, dst, windowSize, method, executor));
+    }
+}
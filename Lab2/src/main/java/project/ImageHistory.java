@@ -0,0 +1,657 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * История изменений изображения для отмены и повтора шагов.
+ * <p>
+ * Каждый уровень истории - снимок из неизменяемых полос строк (около 256K пикселей).
+ * Полосы хранят данные растра как есть, в его собственном формате: 1 бит на пиксель для
+ * TYPE_BYTE_BINARY, 1 байт для TYPE_BYTE_GRAY и т.д., поэтому восстановление точное для
+ * любого типа, а памяти уходит не больше, чем занимает само изображение.
+ * Полоса, не изменившаяся с предыдущего уровня, не копируется, а используется обоими
+ * уровнями (copy-on-write: новый фильтр создаёт новые полосы, старые не трогает).
+ * В памяти держатся полосы не больше чем на residentLimit байт; сверх этого полосы
+ * давно не использованных уровней сжимаются (Deflate с разностным фильтром строк, как в PNG)
+ * и вытесняются во временный файл, откуда читаются при отмене. Когда удалённые уровни
+ * оставляют в файле больше мёртвых байт, чем живых, живые полосы сдвигаются к началу
+ * и файл укорачивается.
+ * Уровень 0 - исходное изображение, он не вытесняется из истории при переполнении.
+ * <p>
+ * Методы синхронизированы; снимок и восстановление большого изображения занимают время,
+ * поэтому вызывать их лучше вне потока Swing.
+ */
+public final class ImageHistory implements AutoCloseable {
+
+    private static final int STRIP_PIXELS = 1 << 18;
+
+    private final int maxLevels;
+    private final long residentLimit;
+
+    private final List<Snapshot> levels = new ArrayList<>();
+    private int position = -1;
+    private long useCounter;
+    private long residentBytes;
+
+    private Path spillFile;
+    private FileChannel spill;
+    private long spilledBytes;
+    private long deadBytes;
+
+    /**
+     * @param maxLevels     наибольшее число уровней вместе с исходным
+     * @param residentLimit сколько байт полос держать в памяти несжатыми
+     */
+    public ImageHistory(int maxLevels, long residentLimit) {
+        if (maxLevels < 2) {
+            throw new IllegalArgumentException("maxLevels must be at least 2: " + maxLevels);
+        }
+        this.maxLevels = maxLevels;
+        this.residentLimit = residentLimit;
+    }
+
+    /**
+     * 20 шагов, в памяти не больше четверти доступной куче.
+     */
+    public ImageHistory() {
+        this(21, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Начинает новую историю с исходного изображения.
+     */
+    public synchronized void start(BufferedImage original) {
+        clear();
+        push(capture(original, null));
+    }
+
+    /**
+     * Добавляет результат очередного шага. Отменённые шаги после текущего
+     * (ветка повтора) удаляются.
+     */
+    public synchronized void commit(BufferedImage image) {
+        if (position < 0) {
+            start(image);
+            return;
+        }
+        dropRedo();
+        append(capture(image, levels.get(position)));
+    }
+
+    /**
+     * Возврат к исходному изображению новым шагом, который тоже можно отменить.
+     * Полосы исходного уровня не копируются. Возвращает null, если история пуста.
+     */
+    public synchronized BufferedImage revert() {
+        if (position < 0) {
+            return null;
+        }
+        dropRedo();
+        Snapshot original = levels.get(0);
+        for (Strip strip : original.strips) {
+            strip.references++;
+        }
+        append(new Snapshot(original.width, original.height, original.colorModel, original.sampleModel,
+                original.premultiplied, original.banked, original.rows, original.strips));
+        return restore(levels.get(position));
+    }
+
+    public synchronized boolean canUndo() {
+        return position > 0;
+    }
+
+    public synchronized boolean canRedo() {
+        return position >= 0 && position < levels.size() - 1;
+    }
+
+    /**
+     * Шаг назад; возвращает изображение предыдущего уровня или null, если отменять нечего.
+     */
+    public synchronized BufferedImage undo() {
+        if (!canUndo()) {
+            return null;
+        }
+        return restore(levels.get(--position));
+    }
+
+    /**
+     * Шаг вперёд по отменённым шагам или null, если повторять нечего.
+     */
+    public synchronized BufferedImage redo() {
+        if (!canRedo()) {
+            return null;
+        }
+        return restore(levels.get(++position));
+    }
+
+    /**
+     * Исходное изображение истории или null, если история пуста.
+     */
+    public synchronized BufferedImage original() {
+        return levels.isEmpty() ? null : restore(levels.get(0));
+    }
+
+    public synchronized int size() {
+        return levels.size();
+    }
+
+    public synchronized int position() {
+        return position;
+    }
+
+    /**
+     * Байт несжатых полос в памяти.
+     */
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Размер временного файла: сжатые полосы, включая ещё не освобождённые места
+     * полос удалённых уровней.
+     */
+    public synchronized long spilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Удаляет все уровни и временный файл.
+     */
+    public synchronized void clear() {
+        levels.clear();
+        position = -1;
+        residentBytes = 0;
+        closeSpill();
+    }
+
+    @Override
+    public synchronized void close() {
+        clear();
+    }
+
+    private void dropRedo() {
+        while (levels.size() > position + 1) {
+            release(levels.remove(levels.size() - 1));
+        }
+        compactSpill();
+    }
+
+    private void append(Snapshot snapshot) {
+        push(snapshot);
+        // Исходное изображение остаётся, удаляется самый старый шаг после него
+        if (levels.size() > maxLevels) {
+            release(levels.remove(1));
+            position--;
+            compactSpill();
+        }
+    }
+
+    private void push(Snapshot snapshot) {
+        levels.add(snapshot);
+        position = levels.size() - 1;
+        touch(snapshot);
+        enforceLimit();
+    }
+
+    private void touch(Snapshot snapshot) {
+        snapshot.lastUsed = ++useCounter;
+    }
+
+    /**
+     * Вытесняет полосы уровней в порядке давности использования, пока память не в пределах.
+     */
+    private void enforceLimit() {
+        while (residentBytes > residentLimit) {
+            Snapshot oldest = null;
+            for (Snapshot level : levels) {
+                if (level.hasResident() && (oldest == null || level.lastUsed < oldest.lastUsed)) {
+                    oldest = level;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            for (Strip strip : oldest.strips) {
+                if (strip.data != null) {
+                    spill(strip);
+                }
+            }
+        }
+    }
+
+    private Snapshot capture(BufferedImage image, Snapshot previous) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rows = Math.max(1, STRIP_PIXELS / Math.max(1, width));
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        SampleModel sampleModel = raster.getSampleModel();
+        int stride = scanlineStride(sampleModel);
+        // Растр без родителя и смещений с одним банком копируется строками банка целиком;
+        // остальные (подызображения, раздельные банки) - через getDataElements
+        boolean banked = stride > 0 && raster.getParent() == null && buffer.getNumBanks() == 1
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && sampleModel.getWidth() == width && sampleModel.getHeight() == height;
+        Object bank = null;
+        int dataType = raster.getTransferType();
+        int step = raster.getNumDataElements();
+        if (banked) {
+            bank = bankData(buffer);
+            dataType = buffer.getDataType();
+            step = sampleModel instanceof ComponentSampleModel component ? component.getPixelStride() : 1;
+        } else {
+            sampleModel = sampleModel.createCompatibleSampleModel(width, height);
+        }
+        step *= elementBytes(dataType);
+        boolean comparable = previous != null && previous.width == width && previous.height == height
+                && previous.banked == banked && previous.rows == rows;
+
+        Strip[] strips = new Strip[(height + rows - 1) / rows];
+        for (int i = 0; i < strips.length; i++) {
+            int y0 = i * rows;
+            int y1 = Math.min(height, y0 + rows);
+            Object data;
+            if (banked) {
+                int from = buffer.getOffset() + y0 * stride;
+                data = Array.newInstance(bank.getClass().getComponentType(),
+                        Math.min((y1 - y0) * stride, Array.getLength(bank) - from));
+                System.arraycopy(bank, from, data, 0, Array.getLength(data));
+            } else {
+                data = raster.getDataElements(0, y0, width, y1 - y0, null);
+            }
+            int hash = hash(data);
+
+            Strip old = comparable ? previous.strips[i] : null;
+            if (old != null && old.hash == hash && Objects.deepEquals(old.load(this), data)) {
+                old.references++;
+                strips[i] = old;
+            } else {
+                strips[i] = new Strip(data, hash, dataType, step);
+                residentBytes += strips[i].size;
+                // Большой снимок не должен целиком оказаться в памяти: сначала вытесняются
+                // старые уровни, а когда их не осталось - уже снятые полосы нового
+                if (residentBytes > residentLimit) {
+                    enforceLimit();
+                    if (residentBytes > residentLimit) {
+                        spill(strips[i]);
+                    }
+                }
+            }
+        }
+        return new Snapshot(width, height, image.getColorModel(), sampleModel, image.isAlphaPremultiplied(),
+                banked, rows, strips);
+    }
+
+    private BufferedImage restore(Snapshot snapshot) {
+        touch(snapshot);
+        WritableRaster raster = Raster.createWritableRaster(snapshot.sampleModel, null);
+        int stride = scanlineStride(snapshot.sampleModel);
+        Object bank = snapshot.banked ? bankData(raster.getDataBuffer()) : null;
+        for (int i = 0; i < snapshot.strips.length; i++) {
+            int y0 = i * snapshot.rows;
+            int y1 = Math.min(snapshot.height, y0 + snapshot.rows);
+            // Вытесненные полосы читаются только на время восстановления и в памяти не остаются
+            Object data = snapshot.strips[i].load(this);
+            if (bank != null) {
+                int to = y0 * stride;
+                System.arraycopy(data, 0, bank, to, Math.min(Array.getLength(data), Array.getLength(bank) - to));
+            } else {
+                raster.setDataElements(0, y0, snapshot.width, y1 - y0, data);
+            }
+        }
+        return new BufferedImage(snapshot.colorModel, raster, snapshot.premultiplied, null);
+    }
+
+    private void release(Snapshot snapshot) {
+        for (Strip strip : snapshot.strips) {
+            if (--strip.references == 0) {
+                if (strip.data != null) {
+                    residentBytes -= strip.size;
+                    strip.data = null;
+                }
+                if (strip.length >= 0) {
+                    deadBytes += strip.length;
+                }
+            }
+        }
+    }
+
+    // Длина строки растра в элементах банка или 0 для моделей без общего банка строк
+    private static int scanlineStride(SampleModel sampleModel) {
+        return switch (sampleModel) {
+            case ComponentSampleModel component -> component.getScanlineStride();
+            case SinglePixelPackedSampleModel packed -> packed.getScanlineStride();
+            case MultiPixelPackedSampleModel packed -> packed.getScanlineStride();
+            default -> 0;
+        };
+    }
+
+    private static Object bankData(DataBuffer buffer) {
+        return switch (buffer) {
+            case DataBufferByte b -> b.getData();
+            case DataBufferUShort b -> b.getData();
+            case DataBufferShort b -> b.getData();
+            case DataBufferInt b -> b.getData();
+            case DataBufferFloat b -> b.getData();
+            case DataBufferDouble b -> b.getData();
+            default -> throw new IllegalArgumentException("Неизвестный тип буфера: " + buffer.getClass().getName());
+        };
+    }
+
+    private static int elementBytes(int dataType) {
+        return DataBuffer.getDataTypeSize(dataType) / 8;
+    }
+
+    private static int hash(Object data) {
+        return switch (data) {
+            case byte[] a -> Arrays.hashCode(a);
+            case short[] a -> Arrays.hashCode(a);
+            case int[] a -> Arrays.hashCode(a);
+            case float[] a -> Arrays.hashCode(a);
+            case double[] a -> Arrays.hashCode(a);
+            default -> throw new IllegalArgumentException("Неизвестный тип данных растра: " + data.getClass().getName());
+        };
+    }
+
+    // --- Вытеснение полос во временный файл ---
+
+    private void spill(Strip strip) {
+        if (strip.length < 0) {
+            byte[] compressed = compress(strip.data, strip.step);
+            try {
+                if (spill == null) {
+                    spillFile = Files.createTempFile("image-history", ".bin");
+                    spillFile.toFile().deleteOnExit();
+                    spill = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                strip.offset = spilledBytes;
+                strip.length = compressed.length;
+                writeSpill(compressed, strip.offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать историю во временный файл", e);
+            }
+            spilledBytes += compressed.length;
+        }
+        strip.data = null;
+        residentBytes -= strip.size;
+    }
+
+    private Object unspill(Strip strip) {
+        try {
+            return decompress(readSpill(strip.offset, strip.length), strip.size, strip.dataType, strip.step);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать историю из временного файла", e);
+        }
+    }
+
+    /**
+     * Если мёртвых байт (полосы удалённых уровней) во временном файле больше, чем живых,
+     * сдвигает живые полосы к началу файла по порядку смещений и обрезает хвост.
+     */
+    private void compactSpill() {
+        if (spill == null || deadBytes <= spilledBytes - deadBytes) {
+            return;
+        }
+        // Полосы общие для нескольких уровней, каждую нужно сдвинуть один раз
+        Set<Strip> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Snapshot level : levels) {
+            for (Strip strip : level.strips) {
+                if (strip.length >= 0) {
+                    live.add(strip);
+                }
+            }
+        }
+        List<Strip> ordered = new ArrayList<>(live);
+        ordered.sort(Comparator.comparingLong(strip -> strip.offset));
+        long end = 0;
+        try {
+            for (Strip strip : ordered) {
+                // Новое место не дальше старого, поэтому ещё не сдвинутые полосы не затираются
+                if (strip.offset != end) {
+                    writeSpill(readSpill(strip.offset, strip.length), end);
+                    strip.offset = end;
+                }
+                end += strip.length;
+            }
+            spill.truncate(end);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сжать временный файл истории", e);
+        }
+        spilledBytes = end;
+        deadBytes = 0;
+    }
+
+    private byte[] readSpill(long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (spill.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Временный файл истории обрезан");
+            }
+        }
+        return bytes;
+    }
+
+    private void writeSpill(byte[] bytes, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            spill.write(buffer, offset + buffer.position());
+        }
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            try {
+                spill.close();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                // Временный файл всё равно удалится при выходе
+            }
+            spill = null;
+            spillFile = null;
+        }
+        spilledBytes = 0;
+        deadBytes = 0;
+    }
+
+    /**
+     * Байты данных растра с разностью каждого байта и того же байта предыдущего пикселя
+     * (step байт назад): на гладких и однотонных участках получаются почти одни нули,
+     * которые Deflate сжимает в разы лучше.
+     */
+    private static byte[] compress(Object data, int step) {
+        byte[] raw = toBytes(data);
+        for (int i = raw.length - 1; i >= step; i--) {
+            raw[i] -= raw[i - step];
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] out = new byte[raw.length / 2 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static Object decompress(byte[] compressed, int size, int dataType, int step) {
+        byte[] raw = new byte[size];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Повреждена сжатая полоса истории", e);
+        } finally {
+            inflater.end();
+        }
+        for (int i = step; i < raw.length; i++) {
+            raw[i] += raw[i - step];
+        }
+        return fromBytes(raw, dataType);
+    }
+
+    private static byte[] toBytes(Object data) {
+        return switch (data) {
+            case byte[] a -> a.clone();
+            case short[] a -> {
+                ByteBuffer buffer = ByteBuffer.allocate(2 * a.length);
+                buffer.asShortBuffer().put(a);
+                yield buffer.array();
+            }
+            case int[] a -> {
+                ByteBuffer buffer = ByteBuffer.allocate(4 * a.length);
+                buffer.asIntBuffer().put(a);
+                yield buffer.array();
+            }
+            case float[] a -> {
+                ByteBuffer buffer = ByteBuffer.allocate(4 * a.length);
+                buffer.asFloatBuffer().put(a);
+                yield buffer.array();
+            }
+            case double[] a -> {
+                ByteBuffer buffer = ByteBuffer.allocate(8 * a.length);
+                buffer.asDoubleBuffer().put(a);
+                yield buffer.array();
+            }
+            default -> throw new IllegalArgumentException("Неизвестный тип данных растра: " + data.getClass().getName());
+        };
+    }
+
+    private static Object fromBytes(byte[] raw, int dataType) {
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        return switch (dataType) {
+            case DataBuffer.TYPE_BYTE -> raw;
+            case DataBuffer.TYPE_USHORT, DataBuffer.TYPE_SHORT -> {
+                short[] a = new short[raw.length / 2];
+                buffer.asShortBuffer().get(a);
+                yield a;
+            }
+            case DataBuffer.TYPE_INT -> {
+                int[] a = new int[raw.length / 4];
+                buffer.asIntBuffer().get(a);
+                yield a;
+            }
+            case DataBuffer.TYPE_FLOAT -> {
+                float[] a = new float[raw.length / 4];
+                buffer.asFloatBuffer().get(a);
+                yield a;
+            }
+            case DataBuffer.TYPE_DOUBLE -> {
+                double[] a = new double[raw.length / 8];
+                buffer.asDoubleBuffer().get(a);
+                yield a;
+            }
+            default -> throw new IllegalArgumentException("Неизвестный тип данных растра: " + dataType);
+        };
+    }
+
+    /**
+     * Уровень истории: формат растра и полосы по rows строк. banked - полосы содержат
+     * строки банка данных растра, иначе результат getDataElements.
+     */
+    private static final class Snapshot {
+        final int width;
+        final int height;
+        final ColorModel colorModel;
+        final SampleModel sampleModel;
+        final boolean premultiplied;
+        final boolean banked;
+        final int rows;
+        final Strip[] strips;
+        long lastUsed;
+
+        Snapshot(int width, int height, ColorModel colorModel, SampleModel sampleModel, boolean premultiplied,
+                 boolean banked, int rows, Strip[] strips) {
+            this.width = width;
+            this.height = height;
+            this.colorModel = colorModel;
+            this.sampleModel = sampleModel;
+            this.premultiplied = premultiplied;
+            this.banked = banked;
+            this.rows = rows;
+            this.strips = strips;
+        }
+
+        boolean hasResident() {
+            for (Strip strip : strips) {
+                if (strip.data != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Неизменяемая полоса строк, общая для всех уровней, где она не менялась.
+     * Данные (массив типа растра) либо в памяти (data), либо сжаты во временном файле
+     * (offset, length); size - их размер в байтах, step - байт на пиксель для разностного фильтра.
+     */
+    private static final class Strip {
+        Object data;
+        final int hash;
+        final int dataType;
+        final int step;
+        final int size;
+        int references = 1;
+        long offset;
+        int length = -1;
+
+        Strip(Object data, int hash, int dataType, int step) {
+            this.data = data;
+            this.hash = hash;
+            this.dataType = dataType;
+            this.step = step;
+            this.size = Array.getLength(data) * elementBytes(dataType);
+        }
+
+        Object load(ImageHistory history) {
+            return data != null ? data : history.unspill(this);
+        }
+    }
+}
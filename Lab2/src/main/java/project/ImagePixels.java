@@ -0,0 +1,319 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+
+/**
+ * Слой прямого доступа к пикселям через WritableRaster / DataBuffer.
+ * Изображение один раз распаковывается в примитивные массивы, алгоритмы
+ * работают с массивами, а результат записывается обратно целиком,
+ * без поштучных вызовов getRGB / setRGB и преобразований ColorModel.
+ * <p>
+ * Быстрые пути: TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_INT_BGR, TYPE_3BYTE_BGR,
+ * TYPE_4BYTE_ABGR и TYPE_BYTE_GRAY (и запись однобитного TYPE_BYTE_BINARY).
+ * Остальные типы читаются и пишутся одним пакетным getRGB / setRGB.
+ */
+public final class ImagePixels {
+
+    // Для TYPE_BYTE_GRAY getRGB применяет гамма-преобразование яркости в sRGB.
+    // Таблицы повторяют его, чтобы быстрый путь давал тот же результат.
+    private static final int[] GRAY_TO_RGB = new int[256];
+    private static final int[] RGB_TO_GRAY = new int[256];
+    private static final long LUMA_SCALE = 268_436; // ceil(2^28 / 1000)
+
+    static {
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = probe.getRaster();
+        for (int v = 0; v < 256; v++) {
+            raster.setSample(0, 0, 0, v);
+            GRAY_TO_RGB[v] = probe.getRGB(0, 0) & 0xFF;
+            probe.setRGB(0, 0, 0xFF000000 | (v << 16) | (v << 8) | v);
+            RGB_TO_GRAY[v] = raster.getSample(0, 0, 0);
+        }
+    }
+
+    private ImagePixels() {
+    }
+
+    /**
+     * Пиксели изображения построчно в формате 0xAARRGGBB (как у getRGB).
+     */
+    public static int[] readRgb(BufferedImage image) {
+        int[] rgb = new int[image.getWidth() * image.getHeight()];
+        readRgbRows(image, 0, image.getHeight(), rgb, 0);
+        return rgb;
+    }
+
+    /**
+     * Читает строки [y0, y1) изображения в rgb начиная с позиции offset.
+     */
+    public static void readRgbRows(BufferedImage image, int y0, int y1, int[] rgb, int offset) {
+        int width = image.getWidth();
+        int from = y0 * width;
+        int count = (y1 - y0) * width;
+
+        if (!isPlainRaster(image)) {
+            image.getRGB(0, y0, width, y1 - y0, rgb, offset, width);
+            return;
+        }
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB -> {
+                int[] data = intData(image);
+                for (int i = 0; i < count; i++) {
+                    rgb[offset + i] = 0xFF000000 | data[from + i];
+                }
+            }
+            case BufferedImage.TYPE_INT_ARGB -> System.arraycopy(intData(image), from, rgb, offset, count);
+            case BufferedImage.TYPE_INT_BGR -> {
+                int[] data = intData(image);
+                for (int i = 0; i < count; i++) {
+                    int p = data[from + i];
+                    rgb[offset + i] = 0xFF000000 | ((p & 0xFF) << 16) | (p & 0xFF00) | ((p >> 16) & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                byte[] data = byteData(image);
+                for (int i = 0, j = from * 3; i < count; i++, j += 3) {
+                    rgb[offset + i] = 0xFF000000 | ((data[j + 2] & 0xFF) << 16)
+                            | ((data[j + 1] & 0xFF) << 8) | (data[j] & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR -> {
+                byte[] data = byteData(image);
+                for (int i = 0, j = from * 4; i < count; i++, j += 4) {
+                    rgb[offset + i] = ((data[j] & 0xFF) << 24) | ((data[j + 3] & 0xFF) << 16)
+                            | ((data[j + 2] & 0xFF) << 8) | (data[j + 1] & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_BYTE_GRAY -> {
+                byte[] data = byteData(image);
+                for (int i = 0; i < count; i++) {
+                    int v = GRAY_TO_RGB[data[from + i] & 0xFF];
+                    rgb[offset + i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+                }
+            }
+            default -> image.getRGB(0, y0, width, y1 - y0, rgb, offset, width);
+        }
+    }
+
+    /**
+     * Создаёт изображение заданного типа и целиком записывает в него пиксели 0xAARRGGBB.
+     * Для TYPE_CUSTOM создаётся TYPE_INT_RGB.
+     */
+    public static BufferedImage writeRgb(int[] rgb, int width, int height, int type) {
+        BufferedImage image = createImage(width, height, type);
+        writeRgbRows(image, 0, height, rgb, 0);
+        return image;
+    }
+
+    /**
+     * Новое изображение заданного типа; TYPE_CUSTOM заменяется на TYPE_INT_RGB.
+     */
+    public static BufferedImage createImage(int width, int height, int type) {
+        return new BufferedImage(width, height, type == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : type);
+    }
+
+    /**
+     * Записывает строки [y0, y1) изображения из rgb начиная с позиции offset.
+     * Для TYPE_BYTE_BINARY белым считается любой пиксель с ненулевым цветом.
+     */
+    public static void writeRgbRows(BufferedImage image, int y0, int y1, int[] rgb, int offset) {
+        int width = image.getWidth();
+        int from = y0 * width;
+        int count = (y1 - y0) * width;
+
+        if (!isPlainRaster(image)) {
+            image.setRGB(0, y0, width, y1 - y0, rgb, offset, width);
+            return;
+        }
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB -> {
+                int[] data = intData(image);
+                for (int i = 0; i < count; i++) {
+                    data[from + i] = rgb[offset + i] & 0xFFFFFF;
+                }
+            }
+            case BufferedImage.TYPE_INT_ARGB -> System.arraycopy(rgb, offset, intData(image), from, count);
+            case BufferedImage.TYPE_INT_BGR -> {
+                int[] data = intData(image);
+                for (int i = 0; i < count; i++) {
+                    int p = rgb[offset + i];
+                    data[from + i] = ((p & 0xFF) << 16) | (p & 0xFF00) | ((p >> 16) & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                byte[] data = byteData(image);
+                for (int i = 0, j = from * 3; i < count; i++, j += 3) {
+                    int p = rgb[offset + i];
+                    data[j] = (byte) p;
+                    data[j + 1] = (byte) (p >> 8);
+                    data[j + 2] = (byte) (p >> 16);
+                }
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR -> {
+                byte[] data = byteData(image);
+                for (int i = 0, j = from * 4; i < count; i++, j += 4) {
+                    int p = rgb[offset + i];
+                    data[j] = (byte) (p >> 24);
+                    data[j + 1] = (byte) p;
+                    data[j + 2] = (byte) (p >> 8);
+                    data[j + 3] = (byte) (p >> 16);
+                }
+            }
+            case BufferedImage.TYPE_BYTE_GRAY -> {
+                byte[] data = byteData(image);
+                for (int i = 0; i < count; i++) {
+                    int p = rgb[offset + i];
+                    int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+                    if (r == g && g == b) {
+                        data[from + i] = (byte) RGB_TO_GRAY[b];
+                    } else {
+                        // Цветной пиксель: яркость считает ColorModel
+                        image.setRGB((from + i) % width, (from + i) / width, p);
+                    }
+                }
+            }
+            case BufferedImage.TYPE_BYTE_BINARY -> {
+                if (image.getColorModel().getPixelSize() != 1) {
+                    image.setRGB(0, y0, width, y1 - y0, rgb, offset, width);
+                    return;
+                }
+                byte[] data = byteData(image);
+                int stride = (width + 7) / 8;
+                for (int y = y0; y < y1; y++) {
+                    int src = offset + (y - y0) * width;
+                    packBits(rgb, src, width, data, y * stride);
+                }
+            }
+            default -> image.setRGB(0, y0, width, y1 - y0, rgb, offset, width);
+        }
+    }
+
+    // Упаковывает строку в биты TYPE_BYTE_BINARY: 1 - белый (ненулевой цвет), старший бит первым
+    private static void packBits(int[] rgb, int src, int width, byte[] data, int dst) {
+        for (int x = 0; x < width; x += 8) {
+            int bits = 0;
+            int end = Math.min(8, width - x);
+            for (int i = 0; i < end; i++) {
+                if ((rgb[src + x + i] & 0xFFFFFF) != 0) {
+                    bits |= 0x80 >> i;
+                }
+            }
+            data[dst + (x >> 3)] = (byte) bits;
+        }
+    }
+
+    /**
+     * Яркости пикселей строк [y0, y1) изображения в gray (байты 0..255, построчно
+     * с начала изображения), без промежуточного массива RGB.
+     */
+    public static void readGray(BufferedImage image, byte[] gray, int y0, int y1) {
+        int width = image.getWidth();
+        int from = y0 * width;
+        int to = y1 * width;
+
+        if (!isPlainRaster(image)) {
+            readGrayFallback(image, gray, y0, y1);
+            return;
+        }
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> {
+                int[] data = intData(image);
+                for (int i = from; i < to; i++) {
+                    gray[i] = (byte) luma(data[i]);
+                }
+            }
+            case BufferedImage.TYPE_INT_BGR -> {
+                int[] data = intData(image);
+                for (int i = from; i < to; i++) {
+                    int p = data[i];
+                    gray[i] = (byte) luma(p & 0xFF, (p >> 8) & 0xFF, (p >> 16) & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                byte[] data = byteData(image);
+                for (int i = from, j = from * 3; i < to; i++, j += 3) {
+                    gray[i] = (byte) luma(data[j + 2] & 0xFF, data[j + 1] & 0xFF, data[j] & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR -> {
+                byte[] data = byteData(image);
+                for (int i = from, j = from * 4; i < to; i++, j += 4) {
+                    gray[i] = (byte) luma(data[j + 3] & 0xFF, data[j + 2] & 0xFF, data[j + 1] & 0xFF);
+                }
+            }
+            case BufferedImage.TYPE_BYTE_GRAY -> {
+                byte[] data = byteData(image);
+                for (int i = from; i < to; i++) {
+                    gray[i] = (byte) GRAY_TO_RGB[data[i] & 0xFF];
+                }
+            }
+            default -> readGrayFallback(image, gray, y0, y1);
+        }
+    }
+
+    private static void readGrayFallback(BufferedImage image, byte[] gray, int y0, int y1) {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        for (int y = y0; y < y1; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                gray[y * width + x] = (byte) luma(row[x]);
+            }
+        }
+    }
+
+    /**
+     * Яркость пикселя 0xAARRGGBB по формуле люминансности.
+     */
+    public static int luma(int rgb) {
+        return luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    /**
+     * Яркость floor(0.299 * r + 0.587 * g + 0.114 * b) в целых числах:
+     * деление на 1000 заменено умножением на ceil(2^28 / 1000) и сдвигом,
+     * что точно для всех 2^24 цветов.
+     */
+    public static int luma(int r, int g, int b) {
+        return (int) (((299 * r + 587 * g + 114 * b) * LUMA_SCALE) >>> 28);
+    }
+
+    /**
+     * Быстрый путь возможен, если растр не является под-областью другого растра
+     * и строки лежат в буфере подряд без отступов.
+     */
+    private static boolean isPlainRaster(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        return raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getSize() == expectedSize(image);
+    }
+
+    private static int expectedSize(BufferedImage image) {
+        int pixels = image.getWidth() * image.getHeight();
+        return switch (image.getType()) {
+            case BufferedImage.TYPE_3BYTE_BGR -> pixels * 3;
+            case BufferedImage.TYPE_4BYTE_ABGR -> pixels * 4;
+            case BufferedImage.TYPE_BYTE_BINARY -> (image.getWidth() + 7) / 8 * image.getHeight();
+            default -> pixels;
+        };
+    }
+
+    private static int[] intData(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return ((DataBufferInt) buffer).getData();
+    }
+
+    private static byte[] byteData(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return ((DataBufferByte) buffer).getData();
+    }
+}
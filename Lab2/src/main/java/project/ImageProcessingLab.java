@@ -2,15 +2,35 @@ package project;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import javax.imageio.ImageIO;
 
 public class ImageProcessingLab extends JFrame {
 
-    private final JLabel imageLabel;
-    private BufferedImage sourceImage;
+    private final ImageViewer viewer;
+    private final JLabel statusLabel;
+    private final JProgressBar progressBar;
+    private final JButton cancelButton;
     private BufferedImage currentImage;
+    // Шаги обработки для отмены и повтора; меняется только в фоновом потоке worker
+    private final ImageHistory history = new ImageHistory();
+    private ParallelExecutor executor = ParallelExecutor.ofAvailableProcessors();
+    // Фильтры выполняются вне потока Swing, по одному; флаг отмены текущей задачи (null - задач нет)
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "image-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private AtomicBoolean runningJob;
 
     public ImageProcessingLab() {
         setTitle("Лабораторная работа: Обработка изображений");
@@ -22,9 +42,8 @@ public class ImageProcessingLab extends JFrame {
         JPanel mainPanel = new JPanel(new BorderLayout());
 
         // Панель для отображения картинки (с прокруткой)
-        imageLabel = new JLabel();
-        imageLabel.setHorizontalAlignment(JLabel.CENTER);
-        JScrollPane scrollPane = new JScrollPane(imageLabel);
+        viewer = new ImageViewer();
+        JScrollPane scrollPane = new JScrollPane(viewer);
         mainPanel.add(scrollPane, BorderLayout.CENTER);
 
         // Панель управления
@@ -33,49 +52,182 @@ public class ImageProcessingLab extends JFrame {
 
         JButton loadButton = new JButton("Загрузить изображение");
         JButton blurButton = new JButton("Сглаживание (Blur)");
+        JButton gaussButton = new JButton("Гаусс");
+        JSpinner sigmaSpinner = new JSpinner(new SpinnerNumberModel(2.0, 0.5, 100.0, 0.5));
+        JButton medianButton = new JButton("Медиана");
+        JSpinner medianSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 50, 1));
         JButton niblackButton = new JButton("Метод Ниблэка");
         JButton sauvolaButton = new JButton("Метод Сауволы");
+        // Остальные методы локального порога, с обычными параметрами
+        String[] thresholdMethods = {"bradley", "wolf", "phansalkar"};
+        JComboBox<String> thresholdBox = new JComboBox<>(new String[]{"Брэдли - Рот", "Вольф - Жолион", "Пхансалкар"});
+        JButton thresholdButton = new JButton("Порог");
         JButton resetButton = new JButton("Сброс");
+        JButton undoButton = new JButton("Шаг назад");
+        JButton redoButton = new JButton("Шаг вперёд");
+        JButton speedupButton = new JButton("Ускорение");
+        JButton metricsButton = new JButton("Статистика");
+        JButton zoomOutButton = new JButton("−");
+        JButton zoomInButton = new JButton("+");
+        JButton actualSizeButton = new JButton("1:1");
+        JButton fitButton = new JButton("Вписать");
+        JLabel zoomLabel = new JLabel("100%");
+        JTextField chainField = new JTextField("blur:5,sauvola:15:0.2", 16);
+        JButton chainButton = new JButton("Цепочка");
+        JSpinner threadsSpinner = new JSpinner(new SpinnerNumberModel(
+                executor.getParallelism(), 1, Math.max(64, executor.getParallelism()), 1));
 
         // --- Обработчики событий ---
 
         loadButton.addActionListener(e -> loadNewImage());
 
         blurButton.addActionListener(e -> {
-            if (sourceImage != null) {
+            if (currentImage != null) {
                 // Размер ядра 5x5
-                applyFilter(applyBoxBlur(currentImage, 5));
+                runFilter(ImageFilters.blurTarget(currentImage),
+                        (src, dst, ex) -> ImageFilters.applyBoxBlur(src, dst, 5, ex));
+            }
+        });
+
+        gaussButton.addActionListener(e -> {
+            if (currentImage != null) {
+                double sigma = (Double) sigmaSpinner.getValue();
+                runFilter(ImageFilters.blurTarget(currentImage),
+                        (src, dst, ex) -> ImageFilters.applyGaussianBlur(src, dst, sigma, ex));
+            }
+        });
+
+        medianButton.addActionListener(e -> {
+            if (currentImage != null) {
+                // Радиус окна, 1 - окно 3x3
+                int radius = (Integer) medianSpinner.getValue();
+                runFilter(ImageFilters.blurTarget(currentImage),
+                        (src, dst, ex) -> ImageFilters.applyMedian(src, dst, radius, ex));
             }
         });
 
         niblackButton.addActionListener(e -> {
-            if (sourceImage != null) {
+            if (currentImage != null) {
                 // Окно 15, k = -0.2
-                applyFilter(applyNiblack(currentImage, 15, -0.2));
+                runFilter(ImageFilters.binaryTarget(currentImage),
+                        (src, dst, ex) -> ImageFilters.applyNiblack(src, dst, 15, -0.2, ex));
             }
         });
 
         sauvolaButton.addActionListener(e -> {
-            if (sourceImage != null) {
+            if (currentImage != null) {
                 // Окно 15, k = 0.2 (для Сауволы k положительный обычно)
-                applyFilter(applySauvola(currentImage, 15, 0.2));
+                runFilter(ImageFilters.binaryTarget(currentImage),
+                        (src, dst, ex) -> ImageFilters.applySauvola(src, dst, 15, 0.2, ex));
             }
         });
 
+        thresholdButton.addActionListener(e -> {
+            if (currentImage != null) {
+                String name = thresholdMethods[thresholdBox.getSelectedIndex()];
+                LocalThreshold.Method method = LocalThreshold.method(name, LocalThreshold.defaultK(name));
+                runFilter(ImageFilters.binaryTarget(currentImage),
+                        (src, dst, ex) -> ImageFilters.applyLocalThreshold(src, dst, 15, method, ex));
+            }
+        });
+
+        // Цепочка фильтров выполняется слитно, без промежуточных изображений
+        chainButton.addActionListener(e -> {
+            if (currentImage != null) {
+                try {
+                    Pipeline pipeline = Pipeline.parse(chainField.getText());
+                    runFilter(pipeline.createTarget(currentImage), pipeline::apply);
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(this, "Ошибка в цепочке: " + ex.getMessage());
+                }
+            }
+        });
+
+        // Сброс - тоже шаг истории, его можно отменить
         resetButton.addActionListener(e -> {
-            if (sourceImage != null) {
-                currentImage = copyImage(sourceImage);
-                imageLabel.setIcon(new ImageIcon(currentImage));
+            if (currentImage != null) {
+                restoreFromHistory(history::revert);
+            }
+        });
+        undoButton.addActionListener(e -> restoreFromHistory(history::undo));
+        redoButton.addActionListener(e -> restoreFromHistory(history::redo));
+        bindKey("control Z", "undo", undoButton);
+        bindKey("control Y", "redo", redoButton);
+
+        // Число потоков для следующих фильтров. Старый пул ещё может понадобиться задачам,
+        // уже поставленным в очередь worker, поэтому он останавливается в той же очереди после них
+        threadsSpinner.addChangeListener(e -> {
+            ParallelExecutor replaced = executor;
+            executor = new ParallelExecutor((Integer) threadsSpinner.getValue());
+            worker.execute(replaced::shutdown);
+        });
+
+        // Масштаб просмотра; Ctrl + колесо мыши масштабирует относительно курсора
+        zoomOutButton.addActionListener(e -> viewer.zoomOut());
+        zoomInButton.addActionListener(e -> viewer.zoomIn());
+        actualSizeButton.addActionListener(e -> viewer.setZoom(1));
+        fitButton.addActionListener(e -> viewer.zoomToFit());
+        viewer.addZoomListener(() -> zoomLabel.setText(Math.round(viewer.getZoom() * 100) + "%"));
+        bindKey("control MINUS", "zoomOut", zoomOutButton);
+        bindKey("control EQUALS", "zoomIn", zoomInButton);
+        bindKey("control 0", "actualSize", actualSizeButton);
+
+        speedupButton.addActionListener(e -> {
+            if (currentImage != null) {
+                showSpeedup();
             }
         });
+        metricsButton.addActionListener(e -> showMetrics());
 
         controlPanel.add(loadButton);
         controlPanel.add(blurButton);
+        controlPanel.add(gaussButton);
+        controlPanel.add(new JLabel("σ:"));
+        controlPanel.add(sigmaSpinner);
+        controlPanel.add(medianButton);
+        controlPanel.add(new JLabel("r:"));
+        controlPanel.add(medianSpinner);
         controlPanel.add(niblackButton);
         controlPanel.add(sauvolaButton);
+        controlPanel.add(thresholdBox);
+        controlPanel.add(thresholdButton);
+        controlPanel.add(chainField);
+        controlPanel.add(chainButton);
         controlPanel.add(resetButton);
-
-        mainPanel.add(controlPanel, BorderLayout.SOUTH);
+        controlPanel.add(undoButton);
+        controlPanel.add(redoButton);
+        controlPanel.add(new JLabel("Потоки:"));
+        controlPanel.add(threadsSpinner);
+        controlPanel.add(speedupButton);
+        controlPanel.add(metricsButton);
+        controlPanel.add(zoomOutButton);
+        controlPanel.add(zoomLabel);
+        controlPanel.add(zoomInButton);
+        controlPanel.add(actualSizeButton);
+        controlPanel.add(fitButton);
+
+        // Ход выполнения и отмена
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        cancelButton = new JButton("Отмена");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> {
+            cancelRunning();
+            viewer.setImage(currentImage);
+        });
+        controlPanel.add(progressBar);
+        controlPanel.add(cancelButton);
+
+        // Строка состояния: замер последнего вызова фильтра (время, МП/с, выделено, потоки)
+        statusLabel = new JLabel("Фильтр ещё не запускался");
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        FilterMetrics.addListener(sample ->
+                SwingUtilities.invokeLater(() -> statusLabel.setText(sample.toString())));
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(controlPanel, BorderLayout.CENTER);
+        southPanel.add(statusLabel, BorderLayout.SOUTH);
+        mainPanel.add(southPanel, BorderLayout.SOUTH);
         add(mainPanel);
     }
 
@@ -86,165 +238,180 @@ public class ImageProcessingLab extends JFrame {
         int res = fileChooser.showOpenDialog(this);
         if (res == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
+            cancelRunning();
             try {
-                sourceImage = ImageIO.read(file);
-                currentImage = copyImage(sourceImage);
-                imageLabel.setIcon(new ImageIcon(currentImage));
+                BufferedImage image;
+                if (file.getName().endsWith("." + MappedImage.EXTENSION)) {
+                    try (MappedImage mapped = MappedImage.open(file.toPath(), false)) {
+                        image = mapped.toBufferedImage();
+                    }
+                } else {
+                    image = ImageIO.read(file);
+                }
+                if (image == null) {
+                    throw new IllegalArgumentException("неизвестный формат");
+                }
+                currentImage = image;
+                viewer.setImage(currentImage);
+                // Большое изображение сразу вписывается в окно, маленькое показывается 1:1
+                viewer.setZoom(Math.min(1, viewer.fitZoom()));
+                worker.execute(() -> history.start(image));
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Ошибка загрузки: " + ex.getMessage());
             }
         }
     }
 
-    private void applyFilter(BufferedImage processed) {
-        currentImage = processed;
-        imageLabel.setIcon(new ImageIcon(currentImage));
-    }
-
-    private BufferedImage copyImage(BufferedImage source) {
-        BufferedImage b = new BufferedImage(source.getWidth(), source.getHeight(), source.getType());
-        Graphics g = b.getGraphics();
-        g.drawImage(source, 0, 0, null);
-        g.dispose();
-        return b;
+    /**
+     * Фильтр, пишущий результат в готовое изображение dst.
+     */
+    @FunctionalInterface
+    private interface Filter {
+        void run(BufferedImage src, BufferedImage dst, ParallelExecutor executor);
     }
 
-    // --- АЛГОРИТМЫ ОБРАБОТКИ ---
-
     /**
-     * 1. Низкочастотный фильтр (Box Blur - усреднение)
+     * Запускает фильтр в фоне. Изображение-приёмник сразу показывается и перерисовывается
+     * по мере готовности полос; новый запуск отменяет ещё не завершённый предыдущий.
      */
-    private BufferedImage applyBoxBlur(BufferedImage src, int radius) {
-        int width = src.getWidth();
-        int height = src.getHeight();
-        BufferedImage result = new BufferedImage(width, height, src.getType());
-
-        int windowSize = radius * 2 + 1;
-        int area = windowSize * windowSize;
-
-        for (int y = radius; y < height - radius; y++) {
-            for (int x = radius; x < width - radius; x++) {
-                int rSum = 0, gSum = 0, bSum = 0;
-
-                // Проход по окну
-                for (int ky = -radius; ky <= radius; ky++) {
-                    for (int kx = -radius; kx <= radius; kx++) {
-                        int pixel = src.getRGB(x + kx, y + ky);
-                        rSum += (pixel >> 16) & 0xFF;
-                        gSum += (pixel >> 8) & 0xFF;
-                        bSum += pixel & 0xFF;
-                    }
+    private void runFilter(BufferedImage target, Filter filter) {
+        cancelRunning();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        runningJob = cancelled;
+
+        BufferedImage src = currentImage;
+        // Перерисовки объединяются: пока одна ждёт в очереди Swing, новые не ставятся
+        AtomicBoolean repaintPending = new AtomicBoolean();
+        ParallelExecutor monitored = executor.withMonitor(new ParallelExecutor.Monitor() {
+            @Override
+            public boolean isCancelled() {
+                return cancelled.get();
+            }
+
+            @Override
+            public void bandDone(int y0, int y1, int done, int total, int pass, int passes) {
+                if (repaintPending.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(() -> {
+                        repaintPending.set(false);
+                        if (runningJob == cancelled) {
+                            // Ход всего фильтра: проходы делят шкалу поровну
+                            progressBar.setValue((int) (100 * (pass + (double) done / total) / passes));
+                            viewer.repaint();
+                        }
+                    });
                 }
+            }
+        });
 
-                int r = rSum / area;
-                int g = gSum / area;
-                int b = bSum / area;
+        viewer.setPartialImage(target);
+        progressBar.setValue(0);
+        cancelButton.setEnabled(true);
 
-                int newPixel = (0xFF << 24) | (r << 16) | (g << 8) | b;
-                result.setRGB(x, y, newPixel);
+        // execute, а не submit: ошибка не должна остаться незамеченной в Future
+        worker.execute(() -> {
+            try {
+                filter.run(src, target, monitored);
+                SwingUtilities.invokeLater(() -> {
+                    if (runningJob != cancelled) {
+                        return; // Задачу уже заменили или отменили
+                    }
+                    finishRunning();
+                    currentImage = target;
+                    viewer.setImage(currentImage);
+                    worker.execute(() -> history.commit(target));
+                });
+            } catch (CancellationException ex) {
+                // Отменена: интерфейс уже обновлён тем, кто отменил
+            } catch (Throwable ex) {
+                // В том числе OutOfMemoryError: кнопки должны вернуться в исходное состояние
+                SwingUtilities.invokeLater(() -> {
+                    if (runningJob == cancelled) {
+                        finishRunning();
+                        viewer.setImage(currentImage);
+                        JOptionPane.showMessageDialog(this, "Ошибка обработки: "
+                                + Objects.requireNonNullElse(ex.getMessage(), ex.toString()));
+                    }
+                });
             }
-        }
-        return result;
+        });
     }
 
     /**
-     * Вспомогательный метод: Получение яркости пикселя (Grayscale)
+     * Шаг по истории в фоне: step возвращает восстановленное изображение или null,
+     * если шагать некуда.
      */
-    private int getGray(int rgb) {
-        int r = (rgb >> 16) & 0xFF;
-        int g = (rgb >> 8) & 0xFF;
-        int b = rgb & 0xFF;
-        // Формула люминансности
-        return (int) (0.299 * r + 0.587 * g + 0.114 * b);
+    private void restoreFromHistory(Supplier<BufferedImage> step) {
+        cancelRunning();
+        worker.execute(() -> {
+            BufferedImage image = step.get();
+            if (image != null) {
+                SwingUtilities.invokeLater(() -> {
+                    currentImage = image;
+                    viewer.setImage(currentImage);
+                });
+            }
+        });
     }
 
-    /**
-     * 2. Локальная пороговая обработка: Метод Ниблэка
-     * T = mean + k * stdDev
-     */
-    private BufferedImage applyNiblack(BufferedImage src, int windowSize, double k) {
-        int width = src.getWidth();
-        int height = src.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
-
-        int radius = windowSize / 2;
-
-        for (int y = radius; y < height - radius; y++) {
-            for (int x = radius; x < width - radius; x++) {
-
-                double sum = 0;
-                double sumSq = 0;
-                int count = 0;
-
-                // 1. Вычисляем среднее и стандартное отклонение в окне
-                for (int ky = -radius; ky <= radius; ky++) {
-                    for (int kx = -radius; kx <= radius; kx++) {
-                        int gray = getGray(src.getRGB(x + kx, y + ky));
-                        sum += gray;
-                        sumSq += gray * gray;
-                        count++;
-                    }
-                }
-
-                double mean = sum / count;
-                double variance = (sumSq / count) - (mean * mean);
-                double stdDev = Math.sqrt(Math.max(0, variance));
-
-                // 2. Формула Ниблэка
-                double threshold = mean + k * stdDev;
-
-                int centerGray = getGray(src.getRGB(x, y));
-                int newPixel = (centerGray > threshold) ? 0xFFFFFFFF : 0xFF000000;
-                result.setRGB(x, y, newPixel);
+    private void bindKey(String keyStroke, String name, JButton button) {
+        JRootPane root = getRootPane();
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(keyStroke), name);
+        root.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                button.doClick();
             }
-        }
-        return result;
+        });
     }
 
-    /**
-     * 3. Локальная пороговая обработка: Метод Сауволы
-     * T = mean * (1 + k * (stdDev / R - 1))
-     */
-    private BufferedImage applySauvola(BufferedImage src, int windowSize, double k) {
-        int width = src.getWidth();
-        int height = src.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
-
-        int radius = windowSize / 2;
-        double R = 128.0; // Динамический диапазон стандартного отклонения
-
-        for (int y = radius; y < height - radius; y++) {
-            for (int x = radius; x < width - radius; x++) {
-
-                double sum = 0;
-                double sumSq = 0;
-                int count = 0;
-
-                for (int ky = -radius; ky <= radius; ky++) {
-                    for (int kx = -radius; kx <= radius; kx++) {
-                        int gray = getGray(src.getRGB(x + kx, y + ky));
-                        sum += gray;
-                        sumSq += gray * gray;
-                        count++;
-                    }
-                }
+    // Отменяет выполняющийся фильтр, если он есть
+    private void cancelRunning() {
+        if (runningJob != null) {
+            runningJob.set(true);
+            finishRunning();
+        }
+    }
 
-                double mean = sum / count;
-                double variance = (sumSq / count) - (mean * mean);
-                double stdDev = Math.sqrt(Math.max(0, variance));
+    private void finishRunning() {
+        runningJob = null;
+        progressBar.setValue(0);
+        cancelButton.setEnabled(false);
+    }
 
-                // Формула Сауволы
-                double threshold = mean * (1 + k * ((stdDev / R) - 1));
+    // Ускорение всех фильтров на текущем изображении относительно одного потока (в фоне)
+    private void showSpeedup() {
+        BufferedImage image = currentImage;
+        ParallelExecutor ex = executor;
+        worker.execute(() -> {
+            String report = String.join("\n",
+                    ex.measureSpeedup("Blur", e -> ImageFilters.applyBoxBlur(image, 5, e)).toString(),
+                    ex.measureSpeedup("Ниблэк", e -> ImageFilters.applyNiblack(image, 15, -0.2, e)).toString(),
+                    ex.measureSpeedup("Саувола", e -> ImageFilters.applySauvola(image, 15, 0.2, e)).toString());
+            SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, report, "Ускорение", JOptionPane.INFORMATION_MESSAGE));
+        });
+    }
 
-                int centerGray = getGray(src.getRGB(x, y));
-                int newPixel = (centerGray > threshold) ? 0xFFFFFFFF : 0xFF000000;
-                result.setRGB(x, y, newPixel);
-            }
+    // Накопленная статистика по фильтрам за сеанс
+    private void showMetrics() {
+        StringBuilder report = new StringBuilder();
+        for (FilterMetrics.Stats stats : FilterMetrics.snapshot().values()) {
+            report.append(stats).append('\n');
         }
-        return result;
+        JOptionPane.showMessageDialog(this, report.isEmpty() ? "Фильтры ещё не запускались" : report.toString(),
+                "Статистика фильтров", JOptionPane.INFORMATION_MESSAGE);
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // С параметрами командной строки - пакетный режим без окна, с --watch - служба горячей папки
+        if (args.length > 0) {
+            if (List.of(args).contains("--watch")) {
+                HotFolder.main(args);
+            } else {
+                BatchProcessor.main(args);
+            }
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             new ImageProcessingLab().setVisible(true);
         });
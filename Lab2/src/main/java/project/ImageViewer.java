@@ -0,0 +1,380 @@
+package project;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Просмотр больших изображений с масштабом.
+ * <p>
+ * В фоне строится пирамида уменьшенных копий (каждый уровень вдвое меньше предыдущего,
+ * усреднение 2x2). При отрисовке берётся уровень, ближайший сверху к текущему масштабу,
+ * и рисуется только та его часть, что попадает в видимую область, поэтому время
+ * перерисовки зависит от размера окна, а не изображения. Пока пирамида строится,
+ * используются уже готовые уровни.
+ * <p>
+ * Масштаб: {@link #setZoom}, {@link #zoomToFit}, Ctrl + колесо мыши (относительно курсора).
+ */
+public final class ImageViewer extends JComponent implements Scrollable {
+
+    // Пирамида строится, пока сторона уровня больше этого размера
+    private static final int MIN_LEVEL_SIZE = 256;
+    private static final double MIN_ZOOM = 1.0 / 64;
+    private static final double MAX_ZOOM = 32;
+    private static final double ZOOM_STEP = 1.25;
+
+    // Общий поток построения пирамид всех просмотрщиков
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "image-pyramid");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Готовые пирамиды: пока изображение живо, повторный показ не перестраивает его уровни.
+    // Хранятся только уменьшенные уровни 1..n: значение не должно ссылаться на ключ,
+    // иначе запись WeakHashMap никогда не освободится
+    private static final Map<BufferedImage, List<BufferedImage>> PYRAMIDS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private BufferedImage image;
+    // Уровень 0 - само изображение, дальше уменьшенные копии TYPE_INT_RGB
+    private List<BufferedImage> levels = List.of();
+    private double zoom = 1;
+    // Номер показа: уровни от предыдущего изображения не применяются
+    private volatile int generation;
+
+    private final List<Runnable> zoomListeners = new ArrayList<>();
+
+    public ImageViewer() {
+        setOpaque(true);
+        setBackground(Color.DARK_GRAY);
+        addMouseWheelListener(this::wheelMoved);
+    }
+
+    /**
+     * Показывает готовое изображение и строит для него пирамиду.
+     */
+    public void setImage(BufferedImage image) {
+        show(image);
+        if (image == null) {
+            return;
+        }
+        List<BufferedImage> cached = PYRAMIDS.get(image);
+        if (cached != null) {
+            levels = withBase(image, cached);
+            repaint();
+            return;
+        }
+        int current = generation;
+        BUILDER.submit(() -> buildPyramid(image, current));
+    }
+
+    /**
+     * Показывает изображение, которое ещё заполняется (прогрессивный просмотр):
+     * пирамида не строится, рисуется само изображение.
+     */
+    public void setPartialImage(BufferedImage image) {
+        show(image);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    private void show(BufferedImage image) {
+        boolean resized = this.image == null || image == null
+                || this.image.getWidth() != image.getWidth() || this.image.getHeight() != image.getHeight();
+        this.image = image;
+        this.levels = image == null ? List.of() : List.of(image);
+        generation++;
+        if (resized) {
+            revalidate();
+        }
+        repaint();
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Масштаб относительно центра видимой области.
+     */
+    public void setZoom(double zoom) {
+        Rectangle view = getVisibleRect();
+        setZoom(zoom, new Point(view.x + view.width / 2, view.y + view.height / 2));
+    }
+
+    /**
+     * Масштаб с неподвижной точкой anchor (в координатах компонента).
+     */
+    public void setZoom(double zoom, Point anchor) {
+        double next = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        if (next == this.zoom) {
+            return;
+        }
+        Rectangle view = getVisibleRect();
+        // Точка изображения под anchor
+        double ix = (anchor.x - offsetX()) / this.zoom;
+        double iy = (anchor.y - offsetY()) / this.zoom;
+        this.zoom = next;
+
+        if (getParent() instanceof JViewport viewport) {
+            Dimension size = getPreferredSize();
+            Dimension extent = viewport.getExtentSize();
+            viewport.setViewSize(new Dimension(Math.max(size.width, extent.width), Math.max(size.height, extent.height)));
+            int x = (int) Math.round(ix * next + offsetX() - (anchor.x - view.x));
+            int y = (int) Math.round(iy * next + offsetY() - (anchor.y - view.y));
+            x = Math.max(0, Math.min(x, getWidth() - extent.width));
+            y = Math.max(0, Math.min(y, getHeight() - extent.height));
+            viewport.setViewPosition(new Point(x, y));
+        }
+        revalidate();
+        repaint();
+        zoomListeners.forEach(Runnable::run);
+    }
+
+    public void zoomIn() {
+        setZoom(zoom * ZOOM_STEP);
+    }
+
+    public void zoomOut() {
+        setZoom(zoom / ZOOM_STEP);
+    }
+
+    /**
+     * Вписывает изображение целиком в видимую область.
+     */
+    public void zoomToFit() {
+        setZoom(fitZoom());
+    }
+
+    /**
+     * Масштаб, при котором изображение целиком помещается в видимую область (1, если изображения нет).
+     */
+    public double fitZoom() {
+        Dimension view = getParent() instanceof JViewport viewport ? viewport.getExtentSize() : getSize();
+        if (image == null || view.width <= 0 || view.height <= 0) {
+            return 1;
+        }
+        return Math.min((double) view.width / image.getWidth(), (double) view.height / image.getHeight());
+    }
+
+    /**
+     * Вызывается после каждого изменения масштаба (для подписи с процентами).
+     */
+    public void addZoomListener(Runnable listener) {
+        zoomListeners.add(listener);
+    }
+
+    private void wheelMoved(MouseWheelEvent e) {
+        if (e.isControlDown()) {
+            setZoom(zoom * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+        } else if (getParent() != null) {
+            // Без Ctrl колесо прокручивает, как обычно
+            getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+        }
+    }
+
+    // --- Отрисовка ---
+
+    private int scaledWidth() {
+        return image == null ? 0 : (int) Math.ceil(image.getWidth() * zoom);
+    }
+
+    private int scaledHeight() {
+        return image == null ? 0 : (int) Math.ceil(image.getHeight() * zoom);
+    }
+
+    // Изображение меньше окна рисуется по центру
+    private int offsetX() {
+        return Math.max(0, (getWidth() - scaledWidth()) / 2);
+    }
+
+    private int offsetY() {
+        return Math.max(0, (getHeight() - scaledHeight()) / 2);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getSize());
+        }
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        BufferedImage base = image;
+        if (base == null) {
+            return;
+        }
+
+        // Самый мелкий уровень, ещё не меньше экранного размера
+        List<BufferedImage> available = levels;
+        int level = 0;
+        while (level + 1 < available.size() && zoom * (1 << (level + 1)) <= 1) {
+            level++;
+        }
+        BufferedImage src = available.get(level);
+        double scaleX = zoom * base.getWidth() / src.getWidth();
+        double scaleY = zoom * base.getHeight() / src.getHeight();
+
+        // Видимая часть уровня с запасом в пиксель для сглаживания на краях
+        int ox = offsetX();
+        int oy = offsetY();
+        int sx0 = Math.max(0, (int) Math.floor((clip.x - ox) / scaleX) - 1);
+        int sy0 = Math.max(0, (int) Math.floor((clip.y - oy) / scaleY) - 1);
+        int sx1 = Math.min(src.getWidth(), (int) Math.ceil((clip.x + clip.width - ox) / scaleX) + 1);
+        int sy1 = Math.min(src.getHeight(), (int) Math.ceil((clip.y + clip.height - oy) / scaleY) + 1);
+        if (sx0 >= sx1 || sy0 >= sy1) {
+            return;
+        }
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scaleX < 1
+                    ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                    : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g2.drawImage(src,
+                    ox + (int) Math.round(sx0 * scaleX), oy + (int) Math.round(sy0 * scaleY),
+                    ox + (int) Math.round(sx1 * scaleX), oy + (int) Math.round(sy1 * scaleY),
+                    sx0, sy0, sx1, sy1, null);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    // --- Пирамида ---
+
+    private void buildPyramid(BufferedImage base, int forGeneration) {
+        List<BufferedImage> built = new ArrayList<>();
+        built.add(base);
+        int width = base.getWidth();
+        int height = base.getHeight();
+        int[] previous = null;
+        while (Math.max(width, height) > MIN_LEVEL_SIZE) {
+            if (!isCurrent(forGeneration)) {
+                return;
+            }
+            int w = (width + 1) / 2;
+            int h = (height + 1) / 2;
+            int[] next = previous == null ? halveImage(base) : halve(previous, width, height);
+            built.add(ImagePixels.writeRgb(next, w, h, BufferedImage.TYPE_INT_RGB));
+            previous = next;
+            width = w;
+            height = h;
+
+            List<BufferedImage> snapshot = List.copyOf(built);
+            SwingUtilities.invokeLater(() -> {
+                if (generation == forGeneration) {
+                    levels = snapshot;
+                    repaint();
+                }
+            });
+        }
+        PYRAMIDS.put(base, List.copyOf(built.subList(1, built.size())));
+    }
+
+    private static List<BufferedImage> withBase(BufferedImage base, List<BufferedImage> reduced) {
+        List<BufferedImage> all = new ArrayList<>(reduced.size() + 1);
+        all.add(base);
+        all.addAll(reduced);
+        return List.copyOf(all);
+    }
+
+    private boolean isCurrent(int forGeneration) {
+        // Чтение без синхронизации: в худшем случае достроится лишний уровень
+        return generation == forGeneration;
+    }
+
+    /**
+     * Первый уровень строится из исходного изображения по парам строк,
+     * без полной копии его пикселей.
+     */
+    private static int[] halveImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int w = (width + 1) / 2;
+        int h = (height + 1) / 2;
+        int[] out = new int[w * h];
+        int[] rows = new int[2 * width];
+        for (int y = 0; y < h; y++) {
+            int y0 = 2 * y;
+            int y1 = Math.min(height, y0 + 2);
+            ImagePixels.readRgbRows(image, y0, y1, rows, 0);
+            if (y1 - y0 == 1) {
+                System.arraycopy(rows, 0, rows, width, width);
+            }
+            averageRows(rows, 0, width, width, out, y * w);
+        }
+        return out;
+    }
+
+    private static int[] halve(int[] src, int width, int height) {
+        int w = (width + 1) / 2;
+        int h = (height + 1) / 2;
+        int[] out = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            int top = 2 * y * width;
+            int bottom = Math.min(2 * y + 1, height - 1) * width;
+            averageRows(src, top, bottom, width, out, y * w);
+        }
+        return out;
+    }
+
+    /**
+     * Среднее 2x2 по каналам двух строк src (с началами top и bottom) в строку out;
+     * у нечётной ширины последний столбец повторяется.
+     */
+    private static void averageRows(int[] src, int top, int bottom, int width, int[] out, int offset) {
+        for (int x = 0; x < (width + 1) / 2; x++) {
+            int x0 = 2 * x;
+            int x1 = Math.min(x0 + 1, width - 1);
+            int a = src[top + x0], b = src[top + x1], c = src[bottom + x0], d = src[bottom + x1];
+            int r = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+            int g = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+            int bl = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+            out[offset + x] = 0xFF000000 | (r << 16) | (g << 8) | bl;
+        }
+    }
+
+    // --- Scrollable ---
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(scaledWidth(), scaledHeight());
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 32;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? visibleRect.width * 9 / 10 : visibleRect.height * 9 / 10;
+    }
+
+    // Пока изображение уже окна, компонент растягивается на всё окно (и рисует изображение по центру)
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport viewport && viewport.getWidth() > scaledWidth();
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport viewport && viewport.getHeight() > scaledHeight();
+    }
+}
@@ -0,0 +1,115 @@
+package project;
+
+/**
+ * Интегральное изображение (summed-area table) для яркости и квадрата яркости.
+ * После построения за O(w*h) сумма, среднее и дисперсия по любому
+ * прямоугольному окну считаются за O(1), независимо от размера окна.
+ */
+public final class IntegralImage {
+
+    private final int width;
+    private final int height;
+    // Таблицы размером (width + 1) * (height + 1): нулевые строка и столбец упрощают граничные случаи
+    private final long[] sum;
+    private final long[] sumSq;
+
+    public IntegralImage(GrayPlane gray) {
+        this(gray, ParallelExecutor.sequential());
+    }
+
+    /**
+     * Параллельное построение в два прохода: префиксные суммы каждой строки
+     * (полосы строк независимы), затем накопление по вертикали (полосы столбцов независимы).
+     */
+    public IntegralImage(GrayPlane plane, ParallelExecutor executor) {
+        this.width = plane.getWidth();
+        this.height = plane.getHeight();
+        byte[] gray = plane.data();
+        int stride = width + 1;
+        this.sum = new long[stride * (height + 1)];
+        this.sumSq = new long[stride * (height + 1)];
+
+        executor.forEachBand(0, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                long rowSum = 0;
+                long rowSumSq = 0;
+                int src = y * width;
+                int cur = (y + 1) * stride;
+                for (int x = 0; x < width; x++) {
+                    long g = gray[src + x] & 0xFF;
+                    rowSum += g;
+                    rowSumSq += g * g;
+                    sum[cur + x + 1] = rowSum;
+                    sumSq[cur + x + 1] = rowSumSq;
+                }
+            }
+        });
+
+        // Диапазон здесь - столбцы: каждая полоса столбцов накапливается сверху вниз
+        RowKernels kernels = RowKernels.get();
+        executor.forEachBand(1, stride, (x0, x1) -> {
+            for (int y = 2; y <= height; y++) {
+                kernels.accumulate(sum, sumSq, (y - 1) * stride, y * stride, x0, x1);
+            }
+        });
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Сумма яркостей в прямоугольнике [x0, x1) x [y0, y1).
+     */
+    public long sum(int x0, int y0, int x1, int y1) {
+        return rect(sum, x0, y0, x1, y1);
+    }
+
+    /**
+     * Сумма квадратов яркостей в прямоугольнике [x0, x1) x [y0, y1).
+     */
+    public long sumSq(int x0, int y0, int x1, int y1) {
+        return rect(sumSq, x0, y0, x1, y1);
+    }
+
+    /**
+     * Среднее по квадратному окну со стороной 2 * radius + 1 с центром в (x, y).
+     * Окно должно целиком лежать внутри изображения.
+     */
+    public double mean(int x, int y, int radius) {
+        int side = 2 * radius + 1;
+        return (double) sum(x - radius, y - radius, x + radius + 1, y + radius + 1) / (side * side);
+    }
+
+    /**
+     * Дисперсия по квадратному окну со стороной 2 * radius + 1 с центром в (x, y).
+     */
+    public double variance(int x, int y, int radius) {
+        int count = (2 * radius + 1) * (2 * radius + 1);
+        int x0 = x - radius, y0 = y - radius, x1 = x + radius + 1, y1 = y + radius + 1;
+        double mean = (double) sum(x0, y0, x1, y1) / count;
+        return (double) sumSq(x0, y0, x1, y1) / count - mean * mean;
+    }
+
+    /**
+     * Среднее и стандартное отклонение по окнам со стороной 2 * radius + 1 для всех
+     * центров строки y, окна которых целиком внутри изображения: x из [radius, width - radius).
+     * Остальные элементы mean и stdDev не меняются.
+     */
+    public void rowStats(int y, int radius, double[] mean, double[] stdDev) {
+        int stride = width + 1;
+        RowKernels.get().windowStats(sum, sumSq, (y - radius) * stride, (y + radius + 1) * stride, radius,
+                radius, width - radius, mean, stdDev);
+    }
+
+    private long rect(long[] table, int x0, int y0, int x1, int y1) {
+        int stride = width + 1;
+        int top = y0 * stride;
+        int bottom = y1 * stride;
+        return table[bottom + x1] - table[bottom + x0] - table[top + x1] + table[top + x0];
+    }
+}
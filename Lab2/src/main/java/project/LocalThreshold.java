@@ -0,0 +1,347 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+
+/**
+ * Локальная пороговая обработка с подключаемыми методами.
+ * <p>
+ * Все методы сравнивают яркость пикселя с порогом, зависящим от среднего и стандартного
+ * отклонения яркости в окне вокруг пикселя; различаются только формулой порога
+ * ({@link Method}). Статистика окон считается один раз по интегральному изображению,
+ * поэтому любой новый метод сразу получает быстрый путь:
+ * <ul>
+ *   <li>методам без статистики всего изображения хватает одного слитного прохода
+ *   ({@link #apply}) - статистика строки окон сразу превращается в пороги;</li>
+ *   <li>методу Вольфа нужны минимальная яркость и наибольшее отклонение по всему
+ *   изображению, они собираются тем же проходом, что и статистика окон
+ *   ({@link WindowStatistics}); на одной статистике можно сравнить несколько методов.</li>
+ * </ul>
+ * Пиксели ближе windowSize / 2 к краю остаются нулевыми; белый - яркость выше порога.
+ */
+public final class LocalThreshold {
+
+    private LocalThreshold() {
+    }
+
+    /**
+     * Статистика всего изображения: крайние яркости и наибольшее стандартное
+     * отклонение по окнам.
+     */
+    public record GlobalStats(int minGray, int maxGray, double maxStdDev) {
+    }
+
+    /**
+     * Метод пороговой обработки - формула порога по статистике окна.
+     */
+    public interface Method {
+        String name();
+
+        /**
+         * true - формуле нужна статистика всего изображения ({@link GlobalStats}).
+         */
+        default boolean needsGlobalStats() {
+            return false;
+        }
+
+        /**
+         * Формула порога для изображения; global - null, если {@link #needsGlobalStats()} false.
+         */
+        StreamingThreshold.Formula formula(GlobalStats global);
+    }
+
+    /**
+     * Метод, которому хватает статистики окна.
+     */
+    private record WindowMethod(String name, String params, StreamingThreshold.Formula windowFormula)
+            implements Method {
+        @Override
+        public StreamingThreshold.Formula formula(GlobalStats global) {
+            return windowFormula;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + params + ")";
+        }
+    }
+
+    /**
+     * Ниблэк: T = mean + k * stdDev, обычно k = -0.2.
+     */
+    public static Method niblack(double k) {
+        return new WindowMethod("niblack", "k=" + k, (mean, stdDev) -> mean + k * stdDev);
+    }
+
+    /**
+     * Саувола: T = mean * (1 + k * (stdDev / R - 1)) с динамическим диапазоном отклонения R = 128.
+     */
+    public static Method sauvola(double k) {
+        return sauvola(k, 128.0);
+    }
+
+    public static Method sauvola(double k, double R) {
+        return new WindowMethod("sauvola", "k=" + k + ", R=" + R,
+                (mean, stdDev) -> mean * (1 + k * ((stdDev / R) - 1)));
+    }
+
+    /**
+     * Брэдли - Рот: пиксель тёмный, если он на долю t темнее среднего окна, T = mean * (1 - t);
+     * обычно t = 0.15. Отклонение не используется.
+     */
+    public static Method bradley(double t) {
+        return new WindowMethod("bradley", "t=" + t, (mean, stdDev) -> mean * (1 - t));
+    }
+
+    /**
+     * Пхансалкар: вариант Сауволы для слабоконтрастных изображений,
+     * T = mean * (1 + p * exp(-q * mean) + k * (stdDev / R - 1)) на яркостях [0, 1];
+     * обычно k = 0.25, p = 2, q = 10, R = 0.5.
+     */
+    public static Method phansalkar(double k) {
+        return phansalkar(k, 2, 10, 0.5);
+    }
+
+    public static Method phansalkar(double k, double p, double q, double R) {
+        // Формула для яркостей [0, 1], пересчитанная на [0, 255]
+        double qScaled = q / 255;
+        double rScaled = R * 255;
+        return new WindowMethod("phansalkar", "k=" + k + ", p=" + p + ", q=" + q + ", R=" + R,
+                (mean, stdDev) -> mean * (1 + p * Math.exp(-qScaled * mean) + k * ((stdDev / rScaled) - 1)));
+    }
+
+    /**
+     * Вольф - Жолион: T = mean - k * (1 - stdDev / R) * (mean - M), где M - минимальная
+     * яркость изображения, R - наибольшее отклонение по окнам; обычно k = 0.5.
+     */
+    public static Method wolf(double k) {
+        return new Method() {
+            @Override
+            public String name() {
+                return "wolf";
+            }
+
+            @Override
+            public boolean needsGlobalStats() {
+                return true;
+            }
+
+            @Override
+            public StreamingThreshold.Formula formula(GlobalStats global) {
+                double M = global.minGray();
+                // На однотонном изображении отклонение везде 0, порог - смесь среднего и M
+                double R = Math.max(global.maxStdDev(), 1e-9);
+                return (mean, stdDev) -> mean - k * (1 - stdDev / R) * (mean - M);
+            }
+
+            @Override
+            public String toString() {
+                return "wolf (k=" + k + ")";
+            }
+        };
+    }
+
+    /**
+     * Метод по имени с параметром k (для Брэдли - t); остальные параметры по умолчанию.
+     */
+    public static Method method(String name, double k) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "niblack" -> niblack(k);
+            case "sauvola" -> sauvola(k);
+            case "bradley" -> bradley(k);
+            case "wolf" -> wolf(k);
+            case "phansalkar" -> phansalkar(k);
+            default -> throw new IllegalArgumentException("Неизвестный метод: " + name);
+        };
+    }
+
+    /**
+     * Обычное значение k метода (для Брэдли - t).
+     */
+    public static double defaultK(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "niblack" -> -0.2;
+            case "sauvola" -> 0.2;
+            case "bradley" -> 0.15;
+            case "wolf" -> 0.5;
+            case "phansalkar" -> 0.25;
+            default -> throw new IllegalArgumentException("Неизвестный метод: " + name);
+        };
+    }
+
+    /**
+     * Пороговая обработка src методом method с окном windowSize; результат пишется в dst
+     * (см. {@link ImageFilters#binaryTarget}) по мере готовности полос.
+     */
+    public static void apply(BufferedImage src, BufferedImage dst, int windowSize, Method method,
+                             ParallelExecutor executor) {
+        // Проходы: яркости (если их нет в кэше), два прохода интегрального изображения,
+        // для Вольфа - статистика окон, и сам порог
+        ParallelExecutor passes = executor.withPasses((GrayPlane.isCached(src) ? 0 : 1) + 2
+                + (method.needsGlobalStats() ? 1 : 0) + 1);
+        int radius = windowSize / 2;
+        // Яркости считаются один раз на изображение и берутся из кэша при повторных вызовах
+        GrayPlane gray = GrayPlane.of(src, passes);
+        // Среднее и дисперсия по окну берутся из интегрального изображения за O(1)
+        IntegralImage integral = new IntegralImage(gray, passes);
+        // Статистика всего изображения - отдельным проходом без сохранения окон: в проходе порога
+        // строки окон считаются из интегрального изображения заново, это дешевле 16 байт на пиксель
+        GlobalStats global = method.needsGlobalStats() ? globalStats(gray, integral, radius, passes, null) : null;
+        threshold(gray, dst, radius, method.formula(global),
+                (y, mean, stdDev) -> integral.rowStats(y, radius, mean, stdDev), passes);
+    }
+
+    /**
+     * Источник статистики окон строки y.
+     */
+    @FunctionalInterface
+    interface RowStats {
+        void rowStats(int y, double[] mean, double[] stdDev);
+    }
+
+    /**
+     * Приёмник статистики окон строки y; вызывается из рабочих потоков, массивы переиспользуются.
+     */
+    @FunctionalInterface
+    interface RowStatsSink {
+        void accept(int y, double[] mean, double[] stdDev);
+    }
+
+    /**
+     * Один проход по полосам строк: крайние яркости всего изображения и наибольшее отклонение
+     * окон. Статистика окон каждой строки из [radius, height - radius) заодно передаётся
+     * в rows (null - не нужна).
+     */
+    static GlobalStats globalStats(GrayPlane gray, IntegralImage integral, int radius, ParallelExecutor executor,
+                                   RowStatsSink rows) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        int[] extremes = {255, 0};
+        double[] maxStdDev = {0};
+        executor.forEachBand(0, height, (y0, y1) -> {
+            double[] rowMean = new double[width];
+            double[] rowStdDev = new double[width];
+            int min = 255, max = 0;
+            double maxDev = 0;
+            for (int y = y0; y < y1; y++) {
+                for (int x = 0; x < width; x++) {
+                    int v = gray.get(y * width + x);
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+                if (y < radius || y >= height - radius) {
+                    continue;
+                }
+                integral.rowStats(y, radius, rowMean, rowStdDev);
+                for (int x = radius; x < width - radius; x++) {
+                    maxDev = Math.max(maxDev, rowStdDev[x]);
+                }
+                if (rows != null) {
+                    rows.accept(y, rowMean, rowStdDev);
+                }
+            }
+            synchronized (extremes) {
+                extremes[0] = Math.min(extremes[0], min);
+                extremes[1] = Math.max(extremes[1], max);
+                maxStdDev[0] = Math.max(maxStdDev[0], maxDev);
+            }
+        });
+        return new GlobalStats(extremes[0], extremes[1], maxStdDev[0]);
+    }
+
+    static void threshold(GrayPlane gray, BufferedImage dst, int radius, StreamingThreshold.Formula formula,
+                          RowStats stats, ParallelExecutor executor) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        executor.forEachBand(radius, height - radius, (y0, y1) -> {
+            int[] row = new int[width];
+            double[] mean = new double[width];
+            double[] stdDev = new double[width];
+            for (int y = y0; y < y1; y++) {
+                stats.rowStats(y, mean, stdDev);
+                for (int x = radius; x < width - radius; x++) {
+                    row[x] = gray.get(y * width + x) > formula.threshold(mean[x], stdDev[x]) ? 0xFFFFFFFF : 0;
+                }
+                ImagePixels.writeRgbRows(dst, y, y + 1, row, 0);
+            }
+        });
+    }
+
+    /**
+     * Статистика окон одного размера, посчитанная и сохранённая для всего изображения,
+     * вместе с {@link GlobalStats}. Любое число методов применяется к ней без пересчёта,
+     * так что методы сравниваются на одних и тех же средних и отклонениях.
+     * Память - 16 байт на пиксель, поэтому для одного метода {@link LocalThreshold#apply}
+     * её не сохраняет.
+     */
+    public static final class WindowStatistics {
+        private final GrayPlane gray;
+        private final int windowSize;
+        private final int radius;
+        // Строки y из [radius, height - radius), по width значений на строку
+        private final double[] mean;
+        private final double[] stdDev;
+        private final GlobalStats global;
+
+        private WindowStatistics(GrayPlane gray, int windowSize, double[] mean, double[] stdDev,
+                                 GlobalStats global) {
+            this.gray = gray;
+            this.windowSize = windowSize;
+            this.radius = windowSize / 2;
+            this.mean = mean;
+            this.stdDev = stdDev;
+            this.global = global;
+        }
+
+        public static WindowStatistics compute(BufferedImage src, int windowSize, ParallelExecutor executor) {
+            GrayPlane gray = GrayPlane.of(src, executor);
+            return compute(gray, new IntegralImage(gray, executor), windowSize, executor);
+        }
+
+        /**
+         * Один проход по полосам строк: статистика окон и, заодно, {@link GlobalStats}.
+         */
+        static WindowStatistics compute(GrayPlane gray, IntegralImage integral, int windowSize,
+                                        ParallelExecutor executor) {
+            int width = gray.getWidth();
+            int radius = windowSize / 2;
+            int rows = Math.max(0, gray.getHeight() - 2 * radius);
+            double[] mean = new double[rows * width];
+            double[] stdDev = new double[rows * width];
+            GlobalStats global = globalStats(gray, integral, radius, executor, (y, rowMean, rowStdDev) -> {
+                int offset = (y - radius) * width;
+                System.arraycopy(rowMean, 0, mean, offset, width);
+                System.arraycopy(rowStdDev, 0, stdDev, offset, width);
+            });
+            return new WindowStatistics(gray, windowSize, mean, stdDev, global);
+        }
+
+        public int windowSize() {
+            return windowSize;
+        }
+
+        public GlobalStats global() {
+            return global;
+        }
+
+        /**
+         * Среднее и отклонение окон строки y из [radius, height - radius).
+         */
+        public void rowStats(int y, double[] rowMean, double[] rowStdDev) {
+            int width = gray.getWidth();
+            int offset = (y - radius) * width;
+            System.arraycopy(mean, offset, rowMean, 0, width);
+            System.arraycopy(stdDev, offset, rowStdDev, 0, width);
+        }
+
+        public BufferedImage apply(Method method, ParallelExecutor executor) {
+            BufferedImage dst = new BufferedImage(gray.getWidth(), gray.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+            apply(method, dst, executor);
+            return dst;
+        }
+
+        public void apply(Method method, BufferedImage dst, ParallelExecutor executor) {
+            threshold(gray, dst, radius, method.formula(global), this::rowStats, executor);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Изображение вне кучи: сырой планарный файл, отображённый в память ({@link FileChannel#map}).
+ * <p>
+ * Формат (расширение .limg):
+ * <pre>
+ * 0   магическое число "LAB2IMG" и версия
+ * 8   ширина, высота, вид пикселей ({@link Pipeline.Kind}), int
+ * 20  карта готовых строк: байт на строку, 1 - строка записана
+ * ... плоскости по байту на пиксель, каждая с границы страницы:
+ *     R, G, B для COLOR; одна плоскость яркости для GRAY; 0/255 для BINARY
+ * </pre>
+ * Пиксели читаются и пишутся прямо в отображении, строками 0xAARRGGBB, как в {@link RowSink},
+ * поэтому промежуточный результат цепочки не проходит через кучу и не нагружает сборщик мусора.
+ * Строка отмечается в карте после записи её пикселей: после сбоя процесса
+ * {@link Pipeline#apply(MappedImage, MappedImage, ParallelExecutor)} досчитывает только
+ * неготовые полосы, а другой процесс может открыть файл и читать готовые строки, пока
+ * запись ещё идёт. Записанное переживает падение JVM (данные уже в страничном кэше ОС);
+ * от сбоя самой ОС защищает {@link #force()}.
+ * <p>
+ * Каждая плоскость отображается отдельно, поэтому в плоскости не больше 2^31 пикселей.
+ * Строки разных потоков можно писать и читать одновременно, если они не пересекаются.
+ */
+public final class MappedImage implements AutoCloseable {
+
+    public static final String EXTENSION = "limg";
+
+    private static final long MAGIC = 0x4C41_4232_494D_4701L; // "LAB2IMG", версия 1
+    private static final int HEADER_SIZE = 20;
+    private static final int PAGE = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final Pipeline.Kind kind;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] planes;
+
+    private MappedImage(Path path, FileChannel channel, int width, int height, Pipeline.Kind kind,
+                        boolean writable) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.kind = kind;
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        long dataOffset = align(HEADER_SIZE + (long) height);
+        long planeSize = align((long) width * height);
+        this.header = channel.map(mode, 0, HEADER_SIZE + height);
+        this.planes = new MappedByteBuffer[planeCount(kind)];
+        for (int i = 0; i < planes.length; i++) {
+            planes[i] = channel.map(mode, dataOffset + i * planeSize, (long) width * height);
+        }
+    }
+
+    /**
+     * Создаёт пустой файл изображения (перезаписывая существующий); ни одна строка не готова.
+     */
+    public static MappedImage create(Path path, int width, int height, Pipeline.Kind kind) throws IOException {
+        if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Недопустимый размер: " + width + "x" + height);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Файл нужного размера; незаписанные плоскости остаются разреженными
+            channel.write(ByteBuffer.allocate(1), align(HEADER_SIZE + (long) height)
+                    + planeCount(kind) * align((long) width * height) - 1);
+            MappedImage image = new MappedImage(path, channel, width, height, kind, true);
+            image.header.putLong(0, MAGIC).putInt(8, width).putInt(12, height).putInt(16, kind.ordinal());
+            return image;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Открывает существующий файл изображения.
+     */
+    public static MappedImage open(Path path, boolean writable) throws IOException {
+        FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) < HEADER_SIZE || header.getLong(0) != MAGIC) {
+                throw new IOException("Не файл изображения " + EXTENSION + ": " + path);
+            }
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            int kind = header.getInt(16);
+            if (kind < 0 || kind >= Pipeline.Kind.values().length) {
+                throw new IOException("Неизвестный вид пикселей " + kind + ": " + path);
+            }
+            return new MappedImage(path, channel, width, height, Pipeline.Kind.values()[kind], writable);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Открывает файл для продолжения записи, если он есть и совпадает по размеру и виду,
+     * иначе создаёт новый.
+     */
+    public static MappedImage openOrCreate(Path path, int width, int height, Pipeline.Kind kind) throws IOException {
+        if (Files.exists(path)) {
+            try {
+                MappedImage image = open(path, true);
+                if (image.width == width && image.height == height && image.kind == kind) {
+                    return image;
+                }
+                image.close();
+            } catch (IOException e) {
+                // Повреждённый или чужой файл - создаём заново
+            }
+        }
+        return create(path, width, height, kind);
+    }
+
+    /**
+     * Записывает изображение в новый файл целиком (вид COLOR).
+     */
+    public static MappedImage of(BufferedImage image, Path path) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        MappedImage mapped = create(path, width, height, Pipeline.Kind.COLOR);
+        int rows = Math.max(1, (1 << 20) / width);
+        int[] rgb = new int[rows * width];
+        for (int y0 = 0; y0 < height; y0 += rows) {
+            int y1 = Math.min(height, y0 + rows);
+            ImagePixels.readRgbRows(image, y0, y1, rgb, 0);
+            mapped.writeRows(y0, y1, rgb, 0);
+        }
+        return mapped;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Pipeline.Kind kind() {
+        return kind;
+    }
+
+    public boolean isRowComplete(int y) {
+        return header.get(HEADER_SIZE + y) != 0;
+    }
+
+    /**
+     * true - все строки [y0, y1) записаны.
+     */
+    public boolean isComplete(int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            if (!isRowComplete(y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isComplete() {
+        return isComplete(0, height);
+    }
+
+    /**
+     * Читает строки [y0, y1) в rgb начиная с offset, пиксели 0xAARRGGBB.
+     */
+    public void readRows(int y0, int y1, int[] rgb, int offset) {
+        byte[] line = new byte[width];
+        for (int y = y0; y < y1; y++) {
+            readRow(y, rgb, offset + (y - y0) * width, line);
+        }
+    }
+
+    /**
+     * Записывает строки [y0, y1) из rgb начиная с offset и отмечает их готовыми.
+     */
+    public void writeRows(int y0, int y1, int[] rgb, int offset) {
+        byte[] line = new byte[width];
+        for (int y = y0; y < y1; y++) {
+            writeRow(y, rgb, offset + (y - y0) * width, line);
+        }
+    }
+
+    private void readRow(int y, int[] rgb, int offset, byte[] line) {
+        int index = y * width;
+        if (kind == Pipeline.Kind.COLOR) {
+            for (int x = 0; x < width; x++) {
+                rgb[offset + x] = 0xFF000000;
+            }
+            for (int c = 0; c < 3; c++) {
+                planes[c].get(index, line, 0, width);
+                int shift = 16 - 8 * c;
+                for (int x = 0; x < width; x++) {
+                    rgb[offset + x] |= (line[x] & 0xFF) << shift;
+                }
+            }
+        } else {
+            planes[0].get(index, line, 0, width);
+            for (int x = 0; x < width; x++) {
+                rgb[offset + x] = 0xFF000000 | (line[x] & 0xFF) * 0x010101;
+            }
+        }
+    }
+
+    private void writeRow(int y, int[] rgb, int offset, byte[] line) {
+        int index = y * width;
+        switch (kind) {
+            case COLOR -> {
+                for (int c = 0; c < 3; c++) {
+                    int shift = 16 - 8 * c;
+                    for (int x = 0; x < width; x++) {
+                        line[x] = (byte) (rgb[offset + x] >> shift);
+                    }
+                    planes[c].put(index, line, 0, width);
+                }
+            }
+            case GRAY -> {
+                for (int x = 0; x < width; x++) {
+                    line[x] = (byte) rgb[offset + x];
+                }
+                planes[0].put(index, line, 0, width);
+            }
+            case BINARY -> {
+                // Как и в TYPE_BYTE_BINARY, белый - любой ненулевой цвет
+                for (int x = 0; x < width; x++) {
+                    line[x] = (rgb[offset + x] & 0xFFFFFF) != 0 ? (byte) 0xFF : 0;
+                }
+                planes[0].put(index, line, 0, width);
+            }
+        }
+        header.put(HEADER_SIZE + y, (byte) 1);
+    }
+
+    /**
+     * Приёмник строк, пишущий строки из [y0, y1) и пропускающий остальные (перекрытия полос).
+     */
+    public RowSink rowWriter(int y0, int y1) {
+        byte[] line = new byte[width];
+        return new RowSink() {
+            @Override
+            public void row(int y, int[] pixels) {
+                if (y >= y0 && y < y1) {
+                    writeRow(y, pixels, 0, line);
+                }
+            }
+
+            @Override
+            public void end() {
+            }
+        };
+    }
+
+    /**
+     * Копия в куче, для показа и сохранения в обычные форматы.
+     */
+    public BufferedImage toBufferedImage() {
+        int type = switch (kind) {
+            case COLOR -> BufferedImage.TYPE_INT_RGB;
+            case GRAY -> BufferedImage.TYPE_BYTE_GRAY;
+            case BINARY -> BufferedImage.TYPE_BYTE_BINARY;
+        };
+        BufferedImage image = ImagePixels.createImage(width, height, type);
+        int rows = Math.max(1, (1 << 20) / width);
+        int[] rgb = new int[rows * width];
+        for (int y0 = 0; y0 < height; y0 += rows) {
+            int y1 = Math.min(height, y0 + rows);
+            readRows(y0, y1, rgb, 0);
+            ImagePixels.writeRgbRows(image, y0, y1, rgb, 0);
+        }
+        return image;
+    }
+
+    /**
+     * Сбрасывает записанное на диск.
+     */
+    public void force() {
+        if (!header.isReadOnly()) {
+            for (MappedByteBuffer plane : planes) {
+                plane.force();
+            }
+            header.force();
+        }
+    }
+
+    /**
+     * Закрывает файл. Отображения освобождаются сборщиком мусора, поэтому после close
+     * изображением пользоваться нельзя.
+     */
+    @Override
+    public void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int planeCount(Pipeline.Kind kind) {
+        return kind == Pipeline.Kind.COLOR ? 3 : 1;
+    }
+
+    private static long align(long size) {
+        return (size + PAGE - 1) / PAGE * PAGE;
+    }
+}
@@ -0,0 +1,106 @@
+package project;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Построчная запись в формат Netpbm: P4 (бинарный), P5 (оттенки серого) или P6 (цвет).
+ * Заголовок содержит только размеры, поэтому строки можно писать по мере готовности,
+ * не держа изображение целиком в памяти.
+ */
+public final class NetpbmWriter implements RowSink, Closeable {
+
+    public enum Format {
+        BINARY("P4"), GRAY("P5"), RGB("P6");
+
+        private final String magic;
+
+        Format(String magic) {
+            this.magic = magic;
+        }
+
+        /**
+         * Расширение файла для формата.
+         */
+        public String extension() {
+            return switch (this) {
+                case BINARY -> "pbm";
+                case GRAY -> "pgm";
+                case RGB -> "ppm";
+            };
+        }
+    }
+
+    private final OutputStream out;
+    private final int width;
+    private final Format format;
+    private final byte[] buffer;
+
+    public NetpbmWriter(OutputStream out, int width, int height, Format format) throws IOException {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.width = width;
+        this.format = format;
+        this.buffer = new byte[switch (format) {
+            case BINARY -> (width + 7) / 8;
+            case GRAY -> width;
+            case RGB -> width * 3;
+        }];
+        String header = format.magic + "\n" + width + " " + height + "\n" + (format == Format.BINARY ? "" : "255\n");
+        this.out.write(header.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void row(int y, int[] pixels) {
+        switch (format) {
+            case BINARY -> {
+                // В PBM единичный бит - чёрный пиксель
+                Arrays.fill(buffer, (byte) 0);
+                for (int x = 0; x < width; x++) {
+                    if ((pixels[x] & 0xFFFFFF) == 0) {
+                        buffer[x >> 3] |= (byte) (0x80 >> (x & 7));
+                    }
+                }
+            }
+            case GRAY -> {
+                for (int x = 0; x < width; x++) {
+                    buffer[x] = (byte) pixels[x];
+                }
+            }
+            case RGB -> {
+                for (int x = 0, j = 0; x < width; x++, j += 3) {
+                    int p = pixels[x];
+                    buffer[j] = (byte) (p >> 16);
+                    buffer[j + 1] = (byte) (p >> 8);
+                    buffer[j + 2] = (byte) p;
+                }
+            }
+        }
+        try {
+            out.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Дописывает буфер и закрывает поток; повторный вызов ничего не делает.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,239 @@
+package project;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Параллельное выполнение фильтров по горизонтальным полосам строк на ForkJoinPool.
+ * Каждая полоса пишет только свои строки результата; строки-перекрытия (halo),
+ * нужные окну фильтра, полоса читает из общего неизменяемого источника сама.
+ */
+public final class ParallelExecutor {
+
+    // Минимальная высота полосы: меньше нет смысла, накладные расходы съедят выигрыш
+    private static final int MIN_BAND_ROWS = 16;
+    // Полос больше, чем потоков: work-stealing выравнивает неравномерную нагрузку
+    private static final int BANDS_PER_THREAD = 4;
+
+    // При наблюдении последовательное выполнение тоже режется на полосы, чтобы чаще проверять отмену
+    private static final int MONITORED_BANDS = 64;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final Monitor monitor;
+    // Для наблюдаемого исполнителя: сколько проходов (вызовов forEachBand) ожидается и сколько начато
+    private final int passes;
+    private final AtomicInteger passesStarted;
+
+    /**
+     * @param parallelism число рабочих потоков; 1 - последовательное выполнение в вызывающем потоке
+     */
+    public ParallelExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        this.monitor = null;
+        this.passes = 1;
+        this.passesStarted = null;
+    }
+
+    private ParallelExecutor(ParallelExecutor base, Monitor monitor, int passes) {
+        this.parallelism = base.parallelism;
+        this.pool = base.pool;
+        this.monitor = monitor;
+        this.passes = passes;
+        this.passesStarted = new AtomicInteger();
+    }
+
+    public static ParallelExecutor sequential() {
+        return new ParallelExecutor(1);
+    }
+
+    public static ParallelExecutor ofAvailableProcessors() {
+        return new ParallelExecutor(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Наблюдатель за выполнением: отмена и ход работы.
+     */
+    public interface Monitor {
+        /**
+         * true - оставшиеся полосы не запускаются, forEachBand бросает CancellationException.
+         */
+        boolean isCancelled();
+
+        /**
+         * Полоса [y0, y1) готова; done из total строк текущего прохода обработано.
+         * Проход - один вызов forEachBand; pass - его номер от 0 из passes, объявленных
+         * фильтром через {@link #withPasses}. Вызывается из рабочих потоков.
+         */
+        void bandDone(int y0, int y1, int done, int total, int pass, int passes);
+    }
+
+    /**
+     * Исполнитель с тем же пулом потоков, сообщающий наблюдателю о каждой готовой полосе
+     * и прерывающий работу при отмене. Пул по-прежнему принадлежит исходному исполнителю.
+     */
+    public ParallelExecutor withMonitor(Monitor monitor) {
+        return new ParallelExecutor(this, monitor, 1);
+    }
+
+    /**
+     * Исполнитель для фильтра из passes последовательных вызовов forEachBand: наблюдатель
+     * узнаёт номер прохода и может показывать ход всего фильтра, а не каждого прохода заново.
+     * Без наблюдателя возвращает этот же исполнитель.
+     */
+    public ParallelExecutor withPasses(int passes) {
+        if (passes < 1) {
+            throw new IllegalArgumentException("passes must be positive: " + passes);
+        }
+        return monitor == null ? this : new ParallelExecutor(this, monitor, passes);
+    }
+
+    /**
+     * Обработка полосы строк [y0, y1).
+     */
+    @FunctionalInterface
+    public interface RowBand {
+        void process(int y0, int y1);
+    }
+
+    /**
+     * Разбивает строки [from, to) на полосы и обрабатывает их параллельно.
+     * Возвращает управление, когда все полосы обработаны.
+     */
+    public void forEachBand(int from, int to, RowBand band) {
+        forEachBand(from, to, MIN_BAND_ROWS, band);
+    }
+
+    /**
+     * То же, но полосы не ниже minRows строк (кроме единственной полосы меньшего диапазона).
+     * Нужно фильтрам, которые перед каждой полосой заново читают перекрытие окна:
+     * при полосах ниже перекрытия на повторное чтение уходит больше работы, чем на сами строки.
+     */
+    public void forEachBand(int from, int to, int minRows, RowBand band) {
+        int rows = to - from;
+        if (rows <= 0) {
+            return;
+        }
+        int minBand = Math.max(MIN_BAND_ROWS, minRows);
+        if (monitor != null) {
+            band = monitored(band, rows);
+        }
+        if (pool == null || rows <= minBand) {
+            if (monitor == null) {
+                band.process(from, to);
+                return;
+            }
+            int step = Math.max(minBand, rows / MONITORED_BANDS);
+            for (int y = from; y < to; ) {
+                // Хвост ниже minBand присоединяется к последней полосе
+                int end = to - (y + step) < minBand ? to : y + step;
+                band.process(y, end);
+                y = end;
+            }
+            return;
+        }
+        int grain = Math.max(minBand, rows / (parallelism * BANDS_PER_THREAD));
+        pool.invoke(new BandTask(from, to, grain, minBand, band));
+    }
+
+    private RowBand monitored(RowBand band, int total) {
+        AtomicInteger done = new AtomicInteger();
+        // Лишние проходы сверх объявленных считаются последним
+        int pass = Math.min(passesStarted.getAndIncrement(), passes - 1);
+        return (y0, y1) -> {
+            if (monitor.isCancelled()) {
+                throw new CancellationException();
+            }
+            band.process(y0, y1);
+            monitor.bandDone(y0, y1, done.addAndGet(y1 - y0), total, pass, passes);
+        };
+    }
+
+    /**
+     * Освобождает потоки пула. Вызывается у исходного исполнителя, не у наблюдаемого.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static final class BandTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final int minBand;
+        private final RowBand band;
+
+        BandTask(int from, int to, int grain, int minBand, RowBand band) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.minBand = minBand;
+            this.band = band;
+        }
+
+        @Override
+        protected void compute() {
+            // Делится пополам, только если обе половины не ниже minBand
+            if (to - from <= grain || to - from < 2 * minBand) {
+                band.process(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BandTask(from, mid, grain, minBand, band), new BandTask(mid, to, grain, minBand, band));
+        }
+    }
+
+    /**
+     * Замер ускорения: время последовательного и параллельного выполнения одной задачи.
+     */
+    public record Speedup(String name, int threads, long sequentialNanos, long parallelNanos) {
+        public double factor() {
+            return (double) sequentialNanos / Math.max(1, parallelNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: 1 поток %d мс, %d потоков %d мс, ускорение x%.2f",
+                    name, sequentialNanos / 1_000_000, threads, parallelNanos / 1_000_000, factor());
+        }
+    }
+
+    /**
+     * Задача, выполняемая на заданном исполнителе.
+     */
+    @FunctionalInterface
+    public interface Job {
+        void run(ParallelExecutor executor);
+    }
+
+    /**
+     * Выполняет задачу последовательно и на этом исполнителе, возвращает оба времени.
+     * Перед замером делается один прогрев каждого варианта.
+     */
+    public Speedup measureSpeedup(String name, Job job) {
+        ParallelExecutor sequential = sequential();
+        job.run(sequential);
+        long sequentialNanos = time(job, sequential);
+        job.run(this);
+        long parallelNanos = time(job, this);
+        return new Speedup(name, parallelism, sequentialNanos, parallelNanos);
+    }
+
+    private static long time(Job job, ParallelExecutor executor) {
+        long start = System.nanoTime();
+        job.run(executor);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,325 @@
+package project;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Подбор параметров локальной пороговой обработки: методы {@link LocalThreshold}
+ * (Ниблэк, Саувола, Брэдли - Рот, Вольф - Жолион, Пхансалкар) на сетке размеров окна
+ * и коэффициентов k за один проход.
+ * <p>
+ * Яркости и интегральное изображение строятся один раз на всё изображение,
+ * среднее и отклонение по окнам строки - один раз на размер окна; все значения k
+ * и все методы используют их повторно, так что методы сравниваются на одной статистике.
+ * Если в сетке есть метод Вольфа, статистика окна сохраняется целиком
+ * ({@link LocalThreshold.WindowStatistics}) вместе со статистикой всего изображения. Для каждой комбинации считается доля
+ * переднего плана (чёрных пикселей), а при заданной эталонной маске - точность,
+ * полнота и F-мера по переднему плану.
+ * <p>
+ * Все комбинации оцениваются на одной области: внутри рамки шириной в половину
+ * наибольшего окна сетки, где результат определён у каждой комбинации.
+ * <p>
+ * Пример:
+ * <pre>
+ * java project.ParameterSweep --in scan.png --truth scan_gt.png --windows 15,25,41 \
+ *     --niblack -0.3,-0.2 --sauvola 0.1,0.2,0.3 --out sweep
+ * </pre>
+ */
+public final class ParameterSweep {
+
+    private static final String USAGE = """
+            Использование: --in <файл> --windows <окна> [--niblack <k>] [--sauvola <k>] [--bradley <t>]
+                           [--wolf <k>] [--phansalkar <k>] [--truth <маска>] [--out <каталог>] [--threads <число>]
+              окна и k через запятую; нужен хотя бы один метод
+              маска: тёмные пиксели (яркость < 128) - передний план
+              --out сохраняет результаты как <метод>_w<окно>_k<k>.png""";
+
+    // Граница тёмного в эталонной маске
+    private static final int TRUTH_THRESHOLD = 128;
+
+    private ParameterSweep() {
+    }
+
+    /**
+     * Комбинация параметров сетки.
+     */
+    public record Candidate(String method, int windowSize, double k) {
+        public static Candidate niblack(int windowSize, double k) {
+            return new Candidate("niblack", windowSize, k);
+        }
+
+        public static Candidate sauvola(int windowSize, double k) {
+            return new Candidate("sauvola", windowSize, k);
+        }
+
+        public LocalThreshold.Method thresholdMethod() {
+            return LocalThreshold.method(method, k);
+        }
+
+        public String fileName() {
+            return String.format(Locale.ROOT, "%s_w%d_k%s.png", method, windowSize, k);
+        }
+    }
+
+    /**
+     * Оценка комбинации. image - результат, если его просили сохранить, иначе null.
+     * precision, recall и fMeasure - NaN без эталонной маски.
+     */
+    public record Result(Candidate candidate, BufferedImage image, double foregroundRatio,
+                         double precision, double recall, double fMeasure) {
+        @Override
+        public String toString() {
+            String line = String.format(Locale.ROOT, "%-10s окно %3d  k %6.3f  передний план %6.2f%%",
+                    candidate.method(), candidate.windowSize(), candidate.k(), 100 * foregroundRatio);
+            if (Double.isNaN(fMeasure)) {
+                return line;
+            }
+            return line + String.format(Locale.ROOT, "  P %.4f  R %.4f  F %.4f", precision, recall, fMeasure);
+        }
+    }
+
+    /**
+     * Полная сетка: все окна с каждым k Ниблэка и каждым k Сауволы.
+     */
+    public static List<Candidate> grid(int[] windows, double[] niblackK, double[] sauvolaK) {
+        Map<String, double[]> methods = new LinkedHashMap<>();
+        methods.put("niblack", niblackK);
+        methods.put("sauvola", sauvolaK);
+        return grid(windows, methods);
+    }
+
+    /**
+     * Полная сетка: все окна с каждым k каждого метода, в порядке methods.
+     */
+    public static List<Candidate> grid(int[] windows, Map<String, double[]> methods) {
+        List<Candidate> grid = new ArrayList<>();
+        for (int window : windows) {
+            for (Map.Entry<String, double[]> entry : methods.entrySet()) {
+                for (double k : entry.getValue()) {
+                    grid.add(new Candidate(entry.getKey(), window, k));
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Оценивает все комбинации сетки на изображении.
+     *
+     * @param truth      эталонная маска того же размера или null
+     * @param keepImages сохранять ли результаты в {@link Result#image()}
+     * @return результаты в порядке сетки
+     */
+    public static List<Result> run(BufferedImage image, List<Candidate> grid, BufferedImage truth,
+                                   boolean keepImages, ParallelExecutor executor) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (truth != null && (truth.getWidth() != width || truth.getHeight() != height)) {
+            throw new IllegalArgumentException("Размер маски " + truth.getWidth() + "x" + truth.getHeight()
+                    + " не совпадает с изображением " + width + "x" + height);
+        }
+
+        int margin = 0;
+        for (Candidate candidate : grid) {
+            margin = Math.max(margin, candidate.windowSize() / 2);
+        }
+        if (width <= 2 * margin || height <= 2 * margin) {
+            throw new IllegalArgumentException("Окно " + (2 * margin + 1) + " больше изображения");
+        }
+
+        GrayPlane gray = GrayPlane.of(image, executor);
+        GrayPlane mask = truth == null ? null : GrayPlane.compute(truth, executor);
+        IntegralImage integral = new IntegralImage(gray, executor);
+
+        // Комбинации с одним окном обрабатываются вместе
+        Map<Integer, List<Integer>> byWindow = new LinkedHashMap<>();
+        for (int i = 0; i < grid.size(); i++) {
+            byWindow.computeIfAbsent(grid.get(i).windowSize(), w -> new ArrayList<>()).add(i);
+        }
+
+        BufferedImage[] images = new BufferedImage[grid.size()];
+        // Счётчики по комбинациям: передний план, верно найденный передний план
+        long[] foreground = new long[grid.size()];
+        long[] truePositive = new long[grid.size()];
+        int fm = margin;
+        for (Map.Entry<Integer, List<Integer>> entry : byWindow.entrySet()) {
+            int radius = entry.getKey() / 2;
+            int[] indices = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            // Методу Вольфа нужна статистика всего изображения: окна считаются заранее и сохраняются
+            boolean needsGlobal = false;
+            for (int index : indices) {
+                needsGlobal |= grid.get(index).thresholdMethod().needsGlobalStats();
+            }
+            LocalThreshold.RowStats stats;
+            LocalThreshold.GlobalStats global = null;
+            if (needsGlobal) {
+                LocalThreshold.WindowStatistics windowStats =
+                        LocalThreshold.WindowStatistics.compute(gray, integral, entry.getKey(), executor);
+                global = windowStats.global();
+                stats = windowStats::rowStats;
+            } else {
+                stats = (y, mean, stdDev) -> integral.rowStats(y, radius, mean, stdDev);
+            }
+            StreamingThreshold.Formula[] formulas = new StreamingThreshold.Formula[indices.length];
+            for (int j = 0; j < indices.length; j++) {
+                formulas[j] = grid.get(indices[j]).thresholdMethod().formula(global);
+                if (keepImages) {
+                    images[indices[j]] = ImageFilters.binaryTarget(image);
+                }
+            }
+
+            executor.forEachBand(radius, height - radius, (y0, y1) -> {
+                double[] mean = new double[width];
+                double[] stdDev = new double[width];
+                int[] row = new int[width];
+                long[] fg = new long[indices.length];
+                long[] tp = new long[indices.length];
+                for (int y = y0; y < y1; y++) {
+                    stats.rowStats(y, mean, stdDev);
+                    int offset = y * width;
+                    boolean counted = y >= fm && y < height - fm;
+                    for (int j = 0; j < indices.length; j++) {
+                        StreamingThreshold.Formula formula = formulas[j];
+                        for (int x = radius; x < width - radius; x++) {
+                            boolean white = gray.get(offset + x) > formula.threshold(mean[x], stdDev[x]);
+                            row[x] = white ? 0xFFFFFFFF : 0;
+                            if (!white && counted && x >= fm && x < width - fm) {
+                                fg[j]++;
+                                if (mask != null && mask.get(offset + x) < TRUTH_THRESHOLD) {
+                                    tp[j]++;
+                                }
+                            }
+                        }
+                        if (keepImages) {
+                            ImagePixels.writeRgbRows(images[indices[j]], y, y + 1, row, 0);
+                        }
+                    }
+                }
+                synchronized (foreground) {
+                    for (int j = 0; j < indices.length; j++) {
+                        foreground[indices[j]] += fg[j];
+                        truePositive[indices[j]] += tp[j];
+                    }
+                }
+            });
+        }
+
+        long area = (long) (width - 2 * margin) * (height - 2 * margin);
+        long truthForeground = mask == null ? 0 : countTruth(mask, margin);
+        List<Result> results = new ArrayList<>(grid.size());
+        for (int i = 0; i < grid.size(); i++) {
+            double precision = Double.NaN, recall = Double.NaN, fMeasure = Double.NaN;
+            if (mask != null) {
+                precision = foreground[i] == 0 ? 0 : (double) truePositive[i] / foreground[i];
+                recall = truthForeground == 0 ? 0 : (double) truePositive[i] / truthForeground;
+                fMeasure = precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+            }
+            results.add(new Result(grid.get(i), images[i], (double) foreground[i] / area,
+                    precision, recall, fMeasure));
+        }
+        return results;
+    }
+
+    private static long countTruth(GrayPlane mask, int margin) {
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        long count = 0;
+        for (int y = margin; y < height - margin; y++) {
+            for (int x = margin; x < width - margin; x++) {
+                if (mask.get(y * width + x) < TRUTH_THRESHOLD) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static double[] parseDoubles(String list) {
+        String[] parts = list.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String in = null, truthFile = null, out = null;
+        int[] windows = null;
+        Map<String, double[]> methods = new LinkedHashMap<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--in" -> in = args[++i];
+                    case "--truth" -> truthFile = args[++i];
+                    case "--out" -> out = args[++i];
+                    case "--windows" -> windows = parseInts(args[++i]);
+                    case "--niblack", "--sauvola", "--bradley", "--wolf", "--phansalkar" ->
+                            methods.put(args[i].substring(2), parseDoubles(args[++i]));
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+                }
+            }
+            if (in == null || windows == null || methods.isEmpty()) {
+                throw new IllegalArgumentException("Нужны параметры --in, --windows и хотя бы один метод");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        BufferedImage image = ImageIO.read(new File(in));
+        BufferedImage truth = truthFile == null ? null : ImageIO.read(new File(truthFile));
+        if (image == null || (truthFile != null && truth == null)) {
+            throw new IOException("Не удалось прочитать " + (image == null ? in : truthFile));
+        }
+
+        List<Candidate> grid = grid(windows, methods);
+        ParallelExecutor executor = new ParallelExecutor(threads);
+        long start = System.nanoTime();
+        List<Result> results;
+        try {
+            results = run(image, grid, truth, out != null, executor);
+        } finally {
+            executor.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (out != null) {
+            File dir = new File(out);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Не удалось создать " + dir);
+            }
+            for (Result result : results) {
+                ImageIO.write(result.image(), "png", new File(dir, result.candidate().fileName()));
+            }
+        }
+
+        // С маской лучшие по F-мере сверху, иначе в порядке сетки
+        if (truth != null) {
+            results = new ArrayList<>(results);
+            results.sort(Comparator.comparingDouble(Result::fMeasure).reversed());
+        }
+        results.forEach(System.out::println);
+        System.out.printf(Locale.ROOT, "%d комбинаций за %.2f с%n", grid.size(), elapsed / 1e9);
+    }
+}
@@ -0,0 +1,406 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Цепочка фильтров, выполняемая слитно за один проход по строкам.
+ * <p>
+ * Этапы объявляются вместе:
+ * <pre>
+ * Pipeline pipeline = Pipeline.create().blur(5).grayscale().sauvola(15, 0.2);
+ * BufferedImage result = pipeline.apply(image, executor);
+ * </pre>
+ * Каждая строка исходного изображения сразу проходит все этапы; между этапами живут
+ * только кольца строк высотой в окно этапа, промежуточные BufferedImage не создаются.
+ * Параллельно цепочка выполняется по полосам строк: каждая полоса читает сверху и снизу
+ * столько строк-перекрытий, сколько в сумме нужно окнам всех этапов.
+ * Экземпляры неизменяемы: каждый метод-этап возвращает новую цепочку.
+ */
+public final class Pipeline {
+
+    /**
+     * Вид пикселей на выходе этапа; определяет тип изображения-результата.
+     */
+    public enum Kind {
+        /** Цвет: результат того же типа, что и исходное изображение. */
+        COLOR,
+        /** Оттенки серого: TYPE_BYTE_GRAY. */
+        GRAY,
+        /** Бинарное изображение: TYPE_BYTE_BINARY. */
+        BINARY
+    }
+
+    /**
+     * Потоковый этап цепочки.
+     */
+    public interface Stage {
+        /**
+         * Сколько строк сверху и снизу нужно этапу для вычисления строки.
+         */
+        int radius();
+
+        /**
+         * Вид результата этапа при входе вида input.
+         */
+        Kind output(Kind input);
+
+        RowSink bind(int width, int height, RowSink downstream);
+    }
+
+    /**
+     * Фильтры, которые понимает {@link #parse}, с параметрами - для справки утилит командной строки.
+     */
+    public static final String FILTERS = "blur:<радиус>, median:<радиус>, gray, niblack:<окно>:<k>, sauvola:<окно>:<k>,"
+            + " bradley:<окно>:<t>, phansalkar:<окно>:<k>";
+
+    // Сколько пикселей читается из отображения за раз
+    private static final int MAPPED_CHUNK_PIXELS = 1 << 16;
+
+    private final List<Stage> stages;
+
+    private Pipeline(List<Stage> stages) {
+        this.stages = List.copyOf(stages);
+    }
+
+    /**
+     * Пустая цепочка: результат - копия исходного изображения.
+     */
+    public static Pipeline create() {
+        return new Pipeline(List.of());
+    }
+
+    /**
+     * Разбирает цепочку вида "median:1,blur:5,gray,niblack:15:-0.2,sauvola:15:0.2".
+     * Методы пороговой обработки - по {@link LocalThreshold#method}: niblack, sauvola, bradley, phansalkar;
+     * метода Вольфа - Жолиона здесь нет, ему нужна статистика всего изображения.
+     */
+    public static Pipeline parse(String spec) {
+        Pipeline pipeline = create();
+        for (String part : spec.split(",")) {
+            String[] p = part.trim().split(":");
+            pipeline = switch (p[0].toLowerCase(Locale.ROOT)) {
+                case "blur" -> pipeline.blur(p.length > 1 ? Integer.parseInt(p[1]) : 5);
+                case "median" -> pipeline.median(p.length > 1 ? Integer.parseInt(p[1]) : 1);
+                case "gray" -> pipeline.grayscale();
+                case "niblack", "sauvola", "bradley", "phansalkar" -> {
+                    String name = p[0].toLowerCase(Locale.ROOT);
+                    int window = p.length > 1 ? Integer.parseInt(p[1]) : 15;
+                    double k = p.length > 2 ? Double.parseDouble(p[2]) : LocalThreshold.defaultK(name);
+                    yield pipeline.threshold(name + ":" + window + ":" + k, window, LocalThreshold.method(name, k));
+                }
+                default -> throw new IllegalArgumentException("Неизвестный фильтр: " + p[0]);
+            };
+        }
+        return pipeline;
+    }
+
+    public Pipeline then(Stage stage) {
+        List<Stage> next = new ArrayList<>(stages);
+        next.add(stage);
+        return new Pipeline(next);
+    }
+
+    public Pipeline blur(int radius) {
+        return then(new SimpleStage("blur:" + radius, radius, (w, h, next) -> new StreamingBoxBlur(w, h, radius, next)) {
+            @Override
+            public Kind output(Kind input) {
+                // Размытое бинарное изображение уже не бинарное
+                return input == Kind.BINARY ? Kind.GRAY : input;
+            }
+        });
+    }
+
+    /**
+     * Медианный фильтр радиуса radius по каналам; бинарное изображение остаётся бинарным.
+     */
+    public Pipeline median(int radius) {
+        return then(new SimpleStage("median:" + radius, radius, (w, h, next) -> new StreamingMedian(w, h, radius, next)) {
+            @Override
+            public Kind output(Kind input) {
+                return input;
+            }
+        });
+    }
+
+    public Pipeline grayscale() {
+        return then(new SimpleStage("gray", 0, GrayscaleStage::new) {
+            @Override
+            public Kind output(Kind input) {
+                return input == Kind.BINARY ? Kind.BINARY : Kind.GRAY;
+            }
+        });
+    }
+
+    public Pipeline niblack(int windowSize, double k) {
+        return threshold("niblack:" + windowSize + ":" + k, windowSize, StreamingThreshold.niblack(k));
+    }
+
+    public Pipeline sauvola(int windowSize, double k) {
+        return threshold("sauvola:" + windowSize + ":" + k, windowSize, StreamingThreshold.sauvola(k));
+    }
+
+    /**
+     * Пороговая обработка методом, которому хватает статистики окна. Метод Вольфа - Жолиона
+     * требует статистики всего изображения и в потоковой цепочке невозможен.
+     */
+    public Pipeline threshold(int windowSize, LocalThreshold.Method method) {
+        return threshold(method.name() + ":" + windowSize, windowSize, method);
+    }
+
+    private Pipeline threshold(String name, int windowSize, LocalThreshold.Method method) {
+        if (method.needsGlobalStats()) {
+            throw new IllegalArgumentException("Метод " + method.name()
+                    + " требует статистики всего изображения и не работает в цепочке");
+        }
+        return threshold(name, windowSize, method.formula(null));
+    }
+
+    public Pipeline threshold(int windowSize, StreamingThreshold.Formula formula) {
+        return threshold("threshold:" + windowSize, windowSize, formula);
+    }
+
+    private Pipeline threshold(String name, int windowSize, StreamingThreshold.Formula formula) {
+        return then(new SimpleStage(name, windowSize / 2,
+                (w, h, next) -> new StreamingThreshold(w, h, windowSize, formula, next)) {
+            @Override
+            public Kind output(Kind input) {
+                return Kind.BINARY;
+            }
+        });
+    }
+
+    public List<Stage> stages() {
+        return stages;
+    }
+
+    /**
+     * Вид результата всей цепочки.
+     */
+    public Kind output() {
+        Kind kind = Kind.COLOR;
+        for (Stage stage : stages) {
+            kind = stage.output(kind);
+        }
+        return kind;
+    }
+
+    /**
+     * Суммарное число строк-перекрытий, нужное цепочке сверху и снизу.
+     */
+    public int halo() {
+        int halo = 0;
+        for (Stage stage : stages) {
+            halo += stage.radius();
+        }
+        return halo;
+    }
+
+    /**
+     * Подключает этапы к приёмнику результата: строки, переданные в возвращённый
+     * приёмник, проходят все этапы и попадают в sink.
+     */
+    public RowSink bind(int width, int height, RowSink sink) {
+        RowSink head = sink;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            head = stages.get(i).bind(width, height, head);
+        }
+        return head;
+    }
+
+    /**
+     * Выполняет цепочку над изображением и возвращает результат.
+     */
+    public BufferedImage apply(BufferedImage src, ParallelExecutor executor) {
+        BufferedImage result = createTarget(src);
+        apply(src, result, executor);
+        return result;
+    }
+
+    /**
+     * Изображение-приёмник результата цепочки для исходного изображения src.
+     */
+    public BufferedImage createTarget(BufferedImage src) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        return switch (output()) {
+            case COLOR -> ImagePixels.createImage(width, height, src.getType());
+            case GRAY -> new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            case BINARY -> new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        };
+    }
+
+    /**
+     * Выполняет цепочку, записывая строки результата в result (см. {@link #createTarget})
+     * по мере готовности полос.
+     */
+    public void apply(BufferedImage src, BufferedImage result, ParallelExecutor executor) {
+        FilterMetrics.run("pipeline", toString(), src, executor, () -> run(src, result, executor));
+    }
+
+    /**
+     * {@link #apply(BufferedImage, BufferedImage, ParallelExecutor)} без замера - для фильтров,
+     * которые сами замеряют вызов и выполняются через цепочку.
+     */
+    void run(BufferedImage src, BufferedImage result, ParallelExecutor executor) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int halo = halo();
+
+        executor.forEachBand(0, height, minBandRows(halo), (y0, y1) -> {
+            RowSink head = bind(width, height, new ImageRowWriter(result, y0, y1));
+            int from = Math.max(0, y0 - halo);
+            int to = Math.min(height, y1 + halo);
+            int[] row = new int[width];
+            for (int y = from; y < to; y++) {
+                ImagePixels.readRgbRows(src, y, y + 1, row, 0);
+                head.row(y, row);
+            }
+            head.end();
+        });
+    }
+
+    /**
+     * Выполняет цепочку над изображением вне кучи и пишет результат в result (того же размера,
+     * вида {@link #output()}, см. {@link MappedImage#openOrCreate}). Полосы, все строки которых
+     * в result уже готовы, пропускаются, так что прерванный расчёт продолжается с места сбоя.
+     * Строки читаются из отображения пачками, в куче живут только буферы полос.
+     */
+    public void apply(MappedImage src, MappedImage result, ParallelExecutor executor) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (result.getWidth() != width || result.getHeight() != height || result.kind() != output()) {
+            throw new IllegalArgumentException("Результат должен быть " + width + "x" + height + " вида " + output());
+        }
+        if (!src.isComplete()) {
+            throw new IllegalArgumentException("Исходное изображение записано не полностью: " + src.path());
+        }
+        int halo = halo();
+        int chunk = Math.max(1, MAPPED_CHUNK_PIXELS / width);
+        FilterMetrics.run("pipeline", toString(), width, height, executor, () ->
+                executor.forEachBand(0, height, minBandRows(halo), (y0, y1) -> {
+                    if (result.isComplete(y0, y1)) {
+                        return;
+                    }
+                    RowSink head = bind(width, height, result.rowWriter(y0, y1));
+                    int from = Math.max(0, y0 - halo);
+                    int to = Math.min(height, y1 + halo);
+                    int[] rows = new int[Math.min(chunk, to - from) * width];
+                    int[] row = new int[width];
+                    for (int c0 = from; c0 < to; c0 += chunk) {
+                        int c1 = Math.min(to, c0 + chunk);
+                        src.readRows(c0, c1, rows, 0);
+                        for (int y = c0; y < c1; y++) {
+                            System.arraycopy(rows, (y - c0) * width, row, 0, width);
+                            head.row(y, row);
+                        }
+                    }
+                    head.end();
+                }));
+    }
+
+    // Каждая полоса заново прогоняет через цепочку по halo строк сверху и снизу и строит
+    // свои этапы; при полосе не ниже 4 * halo лишняя работа - не больше половины полезной
+    private static int minBandRows(int halo) {
+        return 4 * halo;
+    }
+
+    /**
+     * Цепочка в виде, который понимает {@link #parse}, например "blur:5,gray,sauvola:15:0.2".
+     */
+    @Override
+    public String toString() {
+        List<String> names = new ArrayList<>();
+        for (Stage stage : stages) {
+            names.add(stage.toString());
+        }
+        return String.join(",", names);
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        RowSink bind(int width, int height, RowSink downstream);
+    }
+
+    private abstract static class SimpleStage implements Stage {
+        private final String name;
+        private final int radius;
+        private final Binder binder;
+
+        SimpleStage(String name, int radius, Binder binder) {
+            this.name = name;
+            this.radius = radius;
+            this.binder = binder;
+        }
+
+        @Override
+        public int radius() {
+            return radius;
+        }
+
+        @Override
+        public RowSink bind(int width, int height, RowSink downstream) {
+            return binder.bind(width, height, downstream);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Перевод строки в оттенки серого: 0xFFvvvvvv, где v - яркость.
+     */
+    private static final class GrayscaleStage implements RowSink {
+        private final RowSink downstream;
+        private final int[] out;
+
+        GrayscaleStage(int width, int height, RowSink downstream) {
+            this.downstream = downstream;
+            this.out = new int[width];
+        }
+
+        @Override
+        public void row(int y, int[] pixels) {
+            for (int x = 0; x < out.length; x++) {
+                int v = ImagePixels.luma(pixels[x]);
+                out[x] = 0xFF000000 | (v << 16) | (v << 8) | v;
+            }
+            downstream.row(y, out);
+        }
+
+        @Override
+        public void end() {
+            downstream.end();
+        }
+    }
+
+    /**
+     * Пишет в изображение строки из диапазона [y0, y1), остальные (перекрытия полосы) пропускает.
+     */
+    private static final class ImageRowWriter implements RowSink {
+        private final BufferedImage target;
+        private final int y0;
+        private final int y1;
+
+        ImageRowWriter(BufferedImage target, int y0, int y1) {
+            this.target = target;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        public void row(int y, int[] pixels) {
+            if (y >= y0 && y < y1) {
+                ImagePixels.writeRgbRows(target, y, y + 1, pixels, 0);
+            }
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package project;
+
+/**
+ * Внутренние циклы фильтров над строками: суммы каналов по столбцам окна,
+ * накопление интегральных таблиц, среднее и отклонение по окнам строки.
+ * <p>
+ * Этот класс - скалярная реализация. Если при запуске подключён модуль
+ * jdk.incubator.vector ({@code --add-modules jdk.incubator.vector}), выбирается
+ * {@link VectorKernels}, обрабатывающая несколько пикселей за инструкцию
+ * (AVX2, AVX-512). Результаты обеих реализаций совпадают бит в бит.
+ * Отключить SIMD можно свойством {@code -Dproject.simd=false}.
+ */
+class RowKernels {
+
+    private static final RowKernels INSTANCE = select();
+
+    RowKernels() {
+    }
+
+    static RowKernels get() {
+        return INSTANCE;
+    }
+
+    private static RowKernels select() {
+        if (!Boolean.parseBoolean(System.getProperty("project.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new RowKernels();
+        }
+        try {
+            // Класс загружается по имени: без модуля его ссылки на Vector API не разрешились бы
+            RowKernels vector = (RowKernels) Class.forName("project.VectorKernels")
+                    .getDeclaredConstructor().newInstance();
+            return vector.isUsable() ? vector : new RowKernels();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new RowKernels();
+        }
+    }
+
+    boolean isUsable() {
+        return true;
+    }
+
+    /**
+     * Прибавляет (sign = 1) или вычитает (sign = -1) каналы пикселей
+     * pixels[offset + x] к суммам по столбцам x из [x0, x1).
+     */
+    void addChannels(int[] pixels, int offset, int[] rCol, int[] gCol, int[] bCol, int x0, int x1, int sign) {
+        for (int x = x0; x < x1; x++) {
+            int pixel = pixels[offset + x];
+            rCol[x] += sign * ((pixel >> 16) & 0xFF);
+            gCol[x] += sign * ((pixel >> 8) & 0xFF);
+            bCol[x] += sign * (pixel & 0xFF);
+        }
+    }
+
+    /**
+     * Прибавляет (sign = 1) или вычитает (sign = -1) яркости и их квадраты
+     * к суммам по столбцам x из [x0, x1).
+     */
+    void addGray(int[] gray, int[] colSum, int[] colSumSq, int x0, int x1, int sign) {
+        for (int x = x0; x < x1; x++) {
+            int g = gray[x];
+            colSum[x] += sign * g;
+            colSumSq[x] += sign * g * g;
+        }
+    }
+
+    /**
+     * Вертикальное накопление интегральных таблиц: строка cur += строка prev, столбцы [x0, x1).
+     */
+    void accumulate(long[] sum, long[] sumSq, int prev, int cur, int x0, int x1) {
+        for (int x = x0; x < x1; x++) {
+            sum[cur + x] += sum[prev + x];
+            sumSq[cur + x] += sumSq[prev + x];
+        }
+    }
+
+    /**
+     * Среднее и стандартное отклонение по окнам со стороной 2 * radius + 1
+     * для центров x из [x0, x1). top и bottom - смещения строк интегральных таблиц
+     * над верхним краем окна и под нижним.
+     */
+    void windowStats(long[] sum, long[] sumSq, int top, int bottom, int radius, int x0, int x1,
+                     double[] mean, double[] stdDev) {
+        int count = (2 * radius + 1) * (2 * radius + 1);
+        for (int x = x0; x < x1; x++) {
+            int left = x - radius;
+            int right = x + radius + 1;
+            long s = sum[bottom + right] - sum[bottom + left] - sum[top + right] + sum[top + left];
+            long sq = sumSq[bottom + right] - sumSq[bottom + left] - sumSq[top + right] + sumSq[top + left];
+            double m = (double) s / count;
+            double variance = (double) sq / count - m * m;
+            mean[x] = m;
+            stdDev[x] = Math.sqrt(Math.max(0, variance));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "скалярные циклы";
+    }
+}
@@ -0,0 +1,16 @@
+package project;
+
+/**
+ * Приёмник потока строк изображения. Строки приходят строго по порядку сверху вниз,
+ * пиксели в формате 0xAARRGGBB. Массив строки принадлежит отправителю и может быть
+ * переиспользован после возврата из {@link #row}, поэтому приёмник копирует то, что хранит.
+ */
+public interface RowSink {
+
+    void row(int y, int[] pixels);
+
+    /**
+     * Все строки переданы; приёмник дописывает хвост и передаёт его дальше.
+     */
+    void end();
+}
@@ -0,0 +1,96 @@
+package project;
+
+import java.util.Arrays;
+
+/**
+ * Основа потоковых фильтров с квадратным окном 2 * radius + 1: принимает строки,
+ * держит кольцо строк окна и выдаёт строку результата, как только окно вокруг неё заполнено.
+ * <p>
+ * Поток может начинаться и заканчиваться не на краю изображения (полоса с перекрытием):
+ * тогда первые и последние radius строк полосы не выдаются, так как их окно неполное.
+ * Строки у настоящих краёв изображения, а также все строки изображения уже окна,
+ * выдаются нулевыми.
+ */
+abstract class SlidingRowStage implements RowSink {
+
+    protected final int width;
+    protected final int height;
+    protected final int radius;
+    protected final int windowSize;
+    private final RowSink downstream;
+    private final int[] out;
+
+    private int firstIn = -1;
+    private int lastIn = -1;
+    private int nextOut;
+
+    protected SlidingRowStage(int width, int height, int radius, RowSink downstream) {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.windowSize = 2 * radius + 1;
+        this.downstream = downstream;
+        this.out = new int[width];
+    }
+
+    /**
+     * Добавляет входную строку y в окно.
+     */
+    protected abstract void accept(int y, int[] pixels);
+
+    /**
+     * Вычисляет строку результата с центром окна в строке y; пиксели ближе radius к краю - нули.
+     */
+    protected abstract void compute(int y, int[] out);
+
+    /**
+     * Убирает из окна строку y.
+     */
+    protected abstract void retire(int y);
+
+    @Override
+    public final void row(int y, int[] pixels) {
+        if (firstIn < 0) {
+            firstIn = y;
+            nextOut = y == 0 ? 0 : y + radius;
+        }
+        lastIn = y;
+
+        // Верхние строки-границы
+        if (firstIn == 0 && y < radius) {
+            emitZero();
+        }
+        // Слишком узкое изображение: окно по строке не помещается
+        boolean narrow = width < windowSize;
+        if (!narrow) {
+            accept(y, pixels);
+        }
+        // Окно строк y - 2r .. y заполнено: готова строка y - r
+        if (y - firstIn >= windowSize - 1) {
+            if (narrow) {
+                emitZero();
+            } else {
+                Arrays.fill(out, 0);
+                compute(y - radius, out);
+                downstream.row(nextOut++, out);
+                retire(y - windowSize + 1);
+            }
+        }
+    }
+
+    @Override
+    public final void end() {
+        // Нижние строки-границы
+        if (lastIn == height - 1) {
+            while (nextOut < height) {
+                emitZero();
+            }
+        }
+        downstream.end();
+    }
+
+    private void emitZero() {
+        Arrays.fill(out, 0);
+        downstream.row(nextOut++, out);
+    }
+}
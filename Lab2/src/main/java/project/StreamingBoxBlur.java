@@ -0,0 +1,65 @@
+package project;
+
+/**
+ * Потоковый Box Blur: хранит только кольцо из 2 * radius + 1 строк и суммы по столбцам,
+ * поэтому память O(width * radius), а не O(width * height). Результат совпадает
+ * с {@link ImageFilters#boxBlur}: строки и столбцы ближе radius к краю нулевые.
+ */
+public final class StreamingBoxBlur extends SlidingRowStage {
+
+    private final int[][] ring;
+    private final int[] rCol;
+    private final int[] gCol;
+    private final int[] bCol;
+
+    public StreamingBoxBlur(int width, int height, int radius, RowSink downstream) {
+        super(width, height, radius, downstream);
+        this.ring = new int[windowSize][width];
+        this.rCol = new int[width];
+        this.gCol = new int[width];
+        this.bCol = new int[width];
+    }
+
+    @Override
+    protected void accept(int y, int[] pixels) {
+        int[] slot = ring[y % windowSize];
+        System.arraycopy(pixels, 0, slot, 0, width);
+        addRow(slot, 1);
+    }
+
+    @Override
+    protected void compute(int y, int[] out) {
+        int area = windowSize * windowSize;
+        int rSum = 0, gSum = 0, bSum = 0;
+        for (int x = 0; x < windowSize - 1; x++) {
+            rSum += rCol[x];
+            gSum += gCol[x];
+            bSum += bCol[x];
+        }
+        for (int x = radius; x < width - radius; x++) {
+            int in = x + radius;
+            rSum += rCol[in];
+            gSum += gCol[in];
+            bSum += bCol[in];
+
+            int r = rSum / area;
+            int g = gSum / area;
+            int b = bSum / area;
+            out[x] = (0xFF << 24) | (r << 16) | (g << 8) | b;
+
+            int o = x - radius;
+            rSum -= rCol[o];
+            gSum -= gCol[o];
+            bSum -= bCol[o];
+        }
+    }
+
+    @Override
+    protected void retire(int y) {
+        addRow(ring[y % windowSize], -1);
+    }
+
+    private void addRow(int[] pixels, int sign) {
+        RowKernels.get().addChannels(pixels, 0, rCol, gCol, bCol, 0, width, sign);
+    }
+}
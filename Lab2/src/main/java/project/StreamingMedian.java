@@ -0,0 +1,149 @@
+package project;
+
+import java.util.Arrays;
+
+/**
+ * Медианный фильтр по каналам за постоянное время на пиксель (S. Perreault, P. Hébert,
+ * "Median Filtering in Constant Time"). Для каждого столбца хранится гистограмма уровней
+ * по окну строк; при сдвиге окна вниз в неё добавляется одна строка и убирается одна.
+ * По строке гистограмма окна сдвигается вправо прибавлением одной гистограммы столбца
+ * и вычитанием другой, поэтому стоимость не зависит от радиуса.
+ * Медиана ищется сначала по 16 грубым ячейкам, затем по 16 уровням внутри найденной;
+ * точные уровни гистограммы окна досчитываются только в ячейках, где оказалась медиана.
+ * <p>
+ * Как и у {@link StreamingBoxBlur}, пиксели ближе radius к краю нулевые;
+ * память O(width * (radius + 256)).
+ */
+public final class StreamingMedian extends SlidingRowStage {
+
+    private static final int LEVELS = 256;
+    // Грубая ячейка объединяет 16 соседних уровней
+    private static final int COARSE = 16;
+
+    private final int[][] ring;
+    // Гистограммы столбцов по окну строк, [канал][x * 256 + уровень]; счётчики не больше windowSize
+    private final char[][] columns;
+    private final char[][] coarseColumns;
+    // Гистограмма окна: грубая обновляется на каждом шаге, точная - по ячейкам по требованию
+    private final int[] kernel = new int[LEVELS];
+    private final int[] coarseKernel = new int[COARSE];
+    // Центр окна, для которого посчитаны уровни ячейки в kernel; -1 - не посчитаны в этой строке
+    private final int[] segmentAt = new int[COARSE];
+
+    public StreamingMedian(int width, int height, int radius, RowSink downstream) {
+        super(width, height, radius, downstream);
+        if (windowSize > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("radius too large: " + radius);
+        }
+        this.ring = new int[windowSize][width];
+        this.columns = new char[3][width * LEVELS];
+        this.coarseColumns = new char[3][width * COARSE];
+    }
+
+    @Override
+    protected void accept(int y, int[] pixels) {
+        int[] slot = ring[y % windowSize];
+        System.arraycopy(pixels, 0, slot, 0, width);
+        updateColumns(slot, 1);
+    }
+
+    @Override
+    protected void compute(int y, int[] out) {
+        int half = windowSize * windowSize / 2;
+        for (int c = 0; c < 3; c++) {
+            int shift = 16 - 8 * c;
+            char[] fine = columns[c];
+            char[] coarse = coarseColumns[c];
+            Arrays.fill(coarseKernel, 0);
+            Arrays.fill(segmentAt, -1);
+            for (int x = 0; x < windowSize - 1; x++) {
+                addCoarse(coarse, x, 1);
+            }
+            for (int x = radius; x < width - radius; x++) {
+                addCoarse(coarse, x + radius, 1);
+                out[x] |= median(fine, x, half) << shift;
+                addCoarse(coarse, x - radius, -1);
+            }
+        }
+        for (int x = radius; x < width - radius; x++) {
+            out[x] |= 0xFF << 24;
+        }
+    }
+
+    @Override
+    protected void retire(int y) {
+        updateColumns(ring[y % windowSize], -1);
+    }
+
+    private void updateColumns(int[] pixels, int sign) {
+        for (int c = 0; c < 3; c++) {
+            int shift = 16 - 8 * c;
+            char[] fine = columns[c];
+            char[] coarse = coarseColumns[c];
+            for (int x = 0; x < width; x++) {
+                int v = (pixels[x] >> shift) & 0xFF;
+                int f = x * LEVELS + v;
+                int k = x * COARSE + (v >> 4);
+                fine[f] = (char) (fine[f] + sign);
+                coarse[k] = (char) (coarse[k] + sign);
+            }
+        }
+    }
+
+    private void addCoarse(char[] coarse, int x, int sign) {
+        int base = x * COARSE;
+        for (int i = 0; i < COARSE; i++) {
+            coarseKernel[i] += sign * coarse[base + i];
+        }
+    }
+
+    /**
+     * Медиана окна с центром в столбце x: уровень, на котором накопленная сумма
+     * гистограммы окна впервые превышает half. Грубая гистограмма окна всегда актуальна,
+     * точная обновляется только в найденной грубой ячейке.
+     */
+    private int median(char[] fine, int x, int half) {
+        int count = 0;
+        int cell = 0;
+        while (count + coarseKernel[cell] <= half) {
+            count += coarseKernel[cell++];
+        }
+        syncSegment(fine, cell, x);
+        int level = cell * COARSE;
+        while (count + kernel[level] <= half) {
+            count += kernel[level++];
+        }
+        return level;
+    }
+
+    /**
+     * Приводит уровни ячейки cell в гистограмме окна к окну с центром x: досчитывает
+     * сдвиг с прошлого обновления ячейки или, если так дороже, собирает её заново.
+     */
+    private void syncSegment(char[] fine, int cell, int x) {
+        int last = segmentAt[cell];
+        if (last == x) {
+            return;
+        }
+        int from = cell * COARSE;
+        int to = from + COARSE;
+        if (last >= 0 && 2 * (x - last) < windowSize) {
+            for (int p = last + 1; p <= x; p++) {
+                int in = (p + radius) * LEVELS;
+                int out = (p - radius - 1) * LEVELS;
+                for (int i = from; i < to; i++) {
+                    kernel[i] += fine[in + i] - fine[out + i];
+                }
+            }
+        } else {
+            Arrays.fill(kernel, from, to, 0);
+            for (int col = x - radius; col <= x + radius; col++) {
+                int base = col * LEVELS;
+                for (int i = from; i < to; i++) {
+                    kernel[i] += fine[base + i];
+                }
+            }
+        }
+        segmentAt[cell] = x;
+    }
+}
@@ -0,0 +1,85 @@
+package project;
+
+/**
+ * Потоковая локальная пороговая обработка методами {@link LocalThreshold}, которым
+ * хватает статистики окна (все, кроме Вольфа - Жолиона). Хранит кольцо
+ * из windowSize строк яркости и суммы яркости и её квадрата по столбцам окна,
+ * поэтому память O(width * windowSize). Результат совпадает с
+ * {@link ImageFilters#applyNiblack} и {@link ImageFilters#applySauvola}:
+ * белый 0xFFFFFFFF, чёрный 0xFF000000, граница шириной windowSize / 2 нулевая.
+ */
+public final class StreamingThreshold extends SlidingRowStage {
+
+    /**
+     * Порог по среднему и стандартному отклонению окна.
+     */
+    @FunctionalInterface
+    public interface Formula {
+        double threshold(double mean, double stdDev);
+    }
+
+    public static Formula niblack(double k) {
+        return LocalThreshold.niblack(k).formula(null);
+    }
+
+    public static Formula sauvola(double k) {
+        return LocalThreshold.sauvola(k).formula(null);
+    }
+
+    private final Formula formula;
+    private final int[][] ring;
+    private final int[] colSum;
+    private final int[] colSumSq;
+
+    public StreamingThreshold(int width, int height, int windowSize, Formula formula, RowSink downstream) {
+        super(width, height, windowSize / 2, downstream);
+        this.formula = formula;
+        this.ring = new int[this.windowSize][width];
+        this.colSum = new int[width];
+        this.colSumSq = new int[width];
+    }
+
+    @Override
+    protected void accept(int y, int[] pixels) {
+        int[] slot = ring[y % windowSize];
+        for (int x = 0; x < width; x++) {
+            slot[x] = ImagePixels.luma(pixels[x]);
+        }
+        addRow(slot, 1);
+    }
+
+    @Override
+    protected void compute(int y, int[] out) {
+        int[] center = ring[y % windowSize];
+        int count = windowSize * windowSize;
+        long sum = 0, sumSq = 0;
+        for (int x = 0; x < windowSize - 1; x++) {
+            sum += colSum[x];
+            sumSq += colSumSq[x];
+        }
+        for (int x = radius; x < width - radius; x++) {
+            int in = x + radius;
+            sum += colSum[in];
+            sumSq += colSumSq[in];
+
+            double mean = (double) sum / count;
+            double variance = (double) sumSq / count - mean * mean;
+            double stdDev = Math.sqrt(Math.max(0, variance));
+            double threshold = formula.threshold(mean, stdDev);
+            out[x] = center[x] > threshold ? 0xFFFFFFFF : 0xFF000000;
+
+            int o = x - radius;
+            sum -= colSum[o];
+            sumSq -= colSumSq[o];
+        }
+    }
+
+    @Override
+    protected void retire(int y) {
+        addRow(ring[y % windowSize], -1);
+    }
+
+    private void addRow(int[] gray, int sign) {
+        RowKernels.get().addGray(gray, colSum, colSumSq, 0, width, sign);
+    }
+}
@@ -0,0 +1,256 @@
+package project;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Потоковая обработка изображений больше доступной памяти.
+ * <p>
+ * Исходный файл декодируется горизонтальными полосами через
+ * {@link ImageReadParam#setSourceRegion}, строки проходят через цепочку {@link Pipeline},
+ * каждый этап которой держит только кольцо строк высотой в своё окно, и результат
+ * сразу пишется в файл Netpbm. Пиковая память - O(ширина * (высота полосы + окна фильтров)).
+ * <p>
+ * Файлы .limg ({@link MappedImage}) читаются и пишутся через отображение в память, минуя кучу.
+ * Из .limg в .limg цепочка выполняется параллельно по полосам и после сбоя продолжается
+ * с неготовых полос.
+ * <p>
+ * Пример:
+ * <pre>
+ * java project.StripStreamer --in scan.png --out scan.pbm --chain blur:2,sauvola:15:0.2 --strip 256
+ * </pre>
+ */
+public final class StripStreamer {
+
+    private static final String USAGE = """
+            Использование: --in <файл> --out <файл> --chain <фильтры> [--strip <строк>]
+              фильтры через запятую: %s
+              результат: .pbm после пороговой обработки, .pgm для оттенков серого, иначе .ppm;
+              .limg на входе или выходе - изображение вне кучи, из .limg в .limg расчёт продолжается после сбоя""".formatted(Pipeline.FILTERS);
+
+    public static final int DEFAULT_STRIP_HEIGHT = 256;
+
+    private StripStreamer() {
+    }
+
+    /**
+     * Формат Netpbm для результата цепочки.
+     */
+    public static NetpbmWriter.Format outputFormat(Pipeline pipeline) {
+        return switch (pipeline.output()) {
+            case COLOR -> NetpbmWriter.Format.RGB;
+            case GRAY -> NetpbmWriter.Format.GRAY;
+            case BINARY -> NetpbmWriter.Format.BINARY;
+        };
+    }
+
+    /**
+     * Обрабатывает файл input цепочкой pipeline и пишет результат в output (Netpbm или .limg).
+     */
+    public static void process(File input, File output, Pipeline pipeline, int stripHeight) throws IOException {
+        checkStripHeight(stripHeight);
+        if (isMapped(input)) {
+            processMapped(input, output, pipeline, stripHeight);
+            return;
+        }
+        try (ImageInputStream stream = ImageIO.createImageInputStream(input)) {
+            if (stream == null) {
+                throw new IOException("Не удалось открыть " + input);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Неизвестный формат: " + input);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                writeOutput(output, pipeline, width, height,
+                        sink -> readStrips(reader, width, height, stripHeight, sink));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static void processMapped(File input, File output, Pipeline pipeline, int stripHeight)
+            throws IOException {
+        try (MappedImage src = MappedImage.open(input.toPath(), false)) {
+            int width = src.getWidth();
+            int height = src.getHeight();
+            if (isMapped(output)) {
+                ParallelExecutor executor = ParallelExecutor.ofAvailableProcessors();
+                try (MappedImage dst = MappedImage.openOrCreate(output.toPath(), width, height, pipeline.output())) {
+                    pipeline.apply(src, dst, executor);
+                } finally {
+                    executor.shutdown();
+                }
+                return;
+            }
+            writeOutput(output, pipeline, width, height, sink -> {
+                int strip = Math.min(stripHeight, height);
+                int[] rows = new int[strip * width];
+                int[] row = new int[width];
+                for (int y0 = 0; y0 < height; y0 += strip) {
+                    int y1 = Math.min(height, y0 + strip);
+                    src.readRows(y0, y1, rows, 0);
+                    for (int y = y0; y < y1; y++) {
+                        System.arraycopy(rows, (y - y0) * width, row, 0, width);
+                        sink.row(y, row);
+                    }
+                }
+                sink.end();
+            });
+        }
+    }
+
+    private static boolean isMapped(File file) {
+        return file.getName().endsWith("." + MappedImage.EXTENSION);
+    }
+
+    /**
+     * Источник строк результата: передаёт все строки в sink (уже связанный с цепочкой) и вызывает end().
+     */
+    @FunctionalInterface
+    private interface RowSource {
+        void writeTo(RowSink sink) throws IOException;
+    }
+
+    /**
+     * Открывает файл результата, пропускает через цепочку строки source и закрывает файл
+     * при любом исходе. Если запись не завершилась, недописанный файл удаляется, чтобы
+     * его не приняли за готовый результат.
+     */
+    private static void writeOutput(File output, Pipeline pipeline, int width, int height, RowSource source)
+            throws IOException {
+        Output sink = outputSink(output, pipeline, width, height);
+        try {
+            try (sink) {
+                source.writeTo(pipeline.bind(width, height, sink));
+            }
+        } catch (Throwable e) {
+            try {
+                Files.deleteIfExists(output.toPath());
+            } catch (IOException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            throw e;
+        }
+    }
+
+    private static Output outputSink(File output, Pipeline pipeline, int width, int height) throws IOException {
+        if (isMapped(output)) {
+            MappedImage image = MappedImage.create(output.toPath(), width, height, pipeline.output());
+            return new Output(image.rowWriter(0, height), image::close);
+        }
+        NetpbmWriter writer = new NetpbmWriter(new FileOutputStream(output), width, height, outputFormat(pipeline));
+        return new Output(writer, writer::close);
+    }
+
+    /**
+     * Конечный приёмник, который можно закрыть и без end(), если поток строк оборвался.
+     * Файл закрывается один раз: в end() или в close(), что наступит раньше.
+     */
+    private static final class Output implements RowSink, Closeable {
+        private final RowSink rows;
+        private final Closeable file;
+        private boolean closed;
+
+        Output(RowSink rows, Closeable file) {
+            this.rows = rows;
+            this.file = file;
+        }
+
+        @Override
+        public void row(int y, int[] pixels) {
+            rows.row(y, pixels);
+        }
+
+        @Override
+        public void end() {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Декодирует изображение полосами по stripHeight строк и передаёт строки в sink.
+     */
+    public static void readStrips(ImageReader reader, int width, int height, int stripHeight, RowSink sink)
+            throws IOException {
+        checkStripHeight(stripHeight);
+        ImageReadParam param = reader.getDefaultReadParam();
+        int[] row = new int[width];
+        for (int y0 = 0; y0 < height; y0 += stripHeight) {
+            int rows = Math.min(stripHeight, height - y0);
+            param.setSourceRegion(new Rectangle(0, y0, width, rows));
+            BufferedImage strip = reader.read(0, param);
+            int[] pixels = ImagePixels.readRgb(strip);
+            for (int y = 0; y < rows; y++) {
+                System.arraycopy(pixels, y * width, row, 0, width);
+                sink.row(y0 + y, row);
+            }
+        }
+        sink.end();
+    }
+
+    private static void checkStripHeight(int stripHeight) {
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("Высота полосы должна быть положительной: " + stripHeight);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String in = null, out = null, chain = null;
+        int strip = DEFAULT_STRIP_HEIGHT;
+        Pipeline pipeline = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--in" -> in = args[++i];
+                    case "--out" -> out = args[++i];
+                    case "--chain" -> chain = args[++i];
+                    case "--strip" -> strip = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+                }
+            }
+            if (in == null || out == null || chain == null) {
+                throw new IllegalArgumentException("Нужны параметры --in, --out и --chain");
+            }
+            checkStripHeight(strip);
+            pipeline = Pipeline.parse(chain);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        process(new File(in), new File(out), pipeline, strip);
+        System.out.printf(Locale.ROOT, "Готово за %.2f с%n", (System.nanoTime() - start) / 1e9);
+    }
+}
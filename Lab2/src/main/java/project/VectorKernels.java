@@ -0,0 +1,125 @@
+package project;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Реализация {@link RowKernels} на Vector API: за одну операцию обрабатывается
+ * столько пикселей, сколько помещается в регистр (8 int в AVX2, 16 в AVX-512).
+ * Хвосты строк, не кратные длине вектора, досчитываются скалярной реализацией.
+ * Операции над double те же и в том же порядке, что в скалярном коде,
+ * поэтому пороги совпадают бит в бит.
+ * <p>
+ * Загружается только через {@link RowKernels#get()} и только при подключённом модуле.
+ */
+final class VectorKernels extends RowKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Long и double одного размера: в векторе столько же элементов, преобразование не меняет форму
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    boolean isUsable() {
+        // На платформах без векторных регистров Vector API работает медленнее скалярного кода
+        return LONGS.length() >= 2 && DOUBLES.length() == LONGS.length();
+    }
+
+    @Override
+    void addChannels(int[] pixels, int offset, int[] rCol, int[] gCol, int[] bCol, int x0, int x1, int sign) {
+        int x = x0;
+        int bound = x0 + INTS.loopBound(x1 - x0);
+        for (; x < bound; x += INTS.length()) {
+            IntVector p = IntVector.fromArray(INTS, pixels, offset + x);
+            IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector b = p.and(0xFF);
+            IntVector rc = IntVector.fromArray(INTS, rCol, x);
+            IntVector gc = IntVector.fromArray(INTS, gCol, x);
+            IntVector bc = IntVector.fromArray(INTS, bCol, x);
+            if (sign > 0) {
+                rc.add(r).intoArray(rCol, x);
+                gc.add(g).intoArray(gCol, x);
+                bc.add(b).intoArray(bCol, x);
+            } else {
+                rc.sub(r).intoArray(rCol, x);
+                gc.sub(g).intoArray(gCol, x);
+                bc.sub(b).intoArray(bCol, x);
+            }
+        }
+        super.addChannels(pixels, offset, rCol, gCol, bCol, x, x1, sign);
+    }
+
+    @Override
+    void addGray(int[] gray, int[] colSum, int[] colSumSq, int x0, int x1, int sign) {
+        int x = x0;
+        int bound = x0 + INTS.loopBound(x1 - x0);
+        for (; x < bound; x += INTS.length()) {
+            IntVector g = IntVector.fromArray(INTS, gray, x);
+            IntVector s = IntVector.fromArray(INTS, colSum, x);
+            IntVector sq = IntVector.fromArray(INTS, colSumSq, x);
+            if (sign > 0) {
+                s.add(g).intoArray(colSum, x);
+                sq.add(g.mul(g)).intoArray(colSumSq, x);
+            } else {
+                s.sub(g).intoArray(colSum, x);
+                sq.sub(g.mul(g)).intoArray(colSumSq, x);
+            }
+        }
+        super.addGray(gray, colSum, colSumSq, x, x1, sign);
+    }
+
+    @Override
+    void accumulate(long[] sum, long[] sumSq, int prev, int cur, int x0, int x1) {
+        int x = x0;
+        int bound = x0 + LONGS.loopBound(x1 - x0);
+        for (; x < bound; x += LONGS.length()) {
+            LongVector.fromArray(LONGS, sum, cur + x)
+                    .add(LongVector.fromArray(LONGS, sum, prev + x))
+                    .intoArray(sum, cur + x);
+            LongVector.fromArray(LONGS, sumSq, cur + x)
+                    .add(LongVector.fromArray(LONGS, sumSq, prev + x))
+                    .intoArray(sumSq, cur + x);
+        }
+        super.accumulate(sum, sumSq, prev, cur, x, x1);
+    }
+
+    @Override
+    void windowStats(long[] sum, long[] sumSq, int top, int bottom, int radius, int x0, int x1,
+                     double[] mean, double[] stdDev) {
+        double count = (2 * radius + 1) * (2 * radius + 1);
+        int x = x0;
+        int bound = x0 + LONGS.loopBound(x1 - x0);
+        for (; x < bound; x += LONGS.length()) {
+            // Для центров x..x+n-1 углы окон лежат подряд: четыре сдвинутые загрузки на таблицу
+            int left = x - radius;
+            int right = x + radius + 1;
+            DoubleVector s = toDouble(window(sum, top, bottom, left, right));
+            DoubleVector sq = toDouble(window(sumSq, top, bottom, left, right));
+            DoubleVector m = s.div(count);
+            DoubleVector variance = sq.div(count).sub(m.mul(m));
+            m.intoArray(mean, x);
+            variance.max(0.0).lanewise(VectorOperators.SQRT).intoArray(stdDev, x);
+        }
+        super.windowStats(sum, sumSq, top, bottom, radius, x, x1, mean, stdDev);
+    }
+
+    private static LongVector window(long[] table, int top, int bottom, int left, int right) {
+        return LongVector.fromArray(LONGS, table, bottom + right)
+                .sub(LongVector.fromArray(LONGS, table, bottom + left))
+                .sub(LongVector.fromArray(LONGS, table, top + right))
+                .add(LongVector.fromArray(LONGS, table, top + left));
+    }
+
+    private static DoubleVector toDouble(LongVector v) {
+        return (DoubleVector) v.convertShape(VectorOperators.L2D, DOUBLES, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "Vector API, " + INTS.vectorBitSize() + " бит";
+    }
+}